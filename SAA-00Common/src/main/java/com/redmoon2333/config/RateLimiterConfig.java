@@ -0,0 +1,119 @@
+package com.redmoon2333.config;
+
+import com.alibaba.cloud.ai.dashscope.audio.DashScopeSpeechSynthesisModel;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.alibaba.cloud.ai.dashscope.embedding.DashScopeEmbeddingModel;
+import com.alibaba.cloud.ai.dashscope.image.DashScopeImageModel;
+import com.redmoon2333.limit.DashScopeRateLimiter;
+import com.redmoon2333.limit.RateLimitedChatModel;
+import com.redmoon2333.limit.RateLimitedEmbeddingModel;
+import com.redmoon2333.limit.RateLimitedImageModel;
+import com.redmoon2333.limit.RateLimitedSpeechSynthesisModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * DashScope 客户端限流：所有 DashScope 模型 Bean（对话、向量、文生图、语音合成）统一包一层限流装饰器，
+ * 同一个 API Key 共享一个 DashScopeRateLimiter。
+ * 位于 com.redmoon2333.config 包下，依赖本模块的应用由组件扫描自动加载，无需再各自复制一份
+ */
+@Configuration
+public class RateLimiterConfig
+{
+    @Value("${dashscope.limit.rpm:60}")
+    private int requestsPerMinute;
+    @Value("${dashscope.limit.tpm:100000}")
+    private long tokensPerMinute;
+    // 排队上限与最长等待时间，超出直接返回 429
+    @Value("${dashscope.limit.max-queue:100}")
+    private int maxQueue;
+    @Value("${dashscope.limit.max-wait-millis:10000}")
+    private long maxWaitMillis;
+    // AIMD 并发上限：初始/最小/最大，遇到 429 或单次耗时超过 latency-threshold 时乘以 backoff
+    @Value("${dashscope.limit.concurrency.initial:8}")
+    private int initialConcurrency;
+    @Value("${dashscope.limit.concurrency.min:1}")
+    private int minConcurrency;
+    @Value("${dashscope.limit.concurrency.max:64}")
+    private int maxConcurrency;
+    @Value("${dashscope.limit.latency-threshold-seconds:30}")
+    private long latencyThresholdSeconds;
+    @Value("${dashscope.limit.backoff:0.5}")
+    private double backoff;
+
+    @Bean
+    public DashScopeRateLimiter dashScopeRateLimiter()
+    {
+        return DashScopeRateLimiter.builder()
+                    .apiKey(System.getenv("aliQwen_api"))
+                    .requestsPerMinute(requestsPerMinute)
+                    .tokensPerMinute(tokensPerMinute)
+                    .maxQueue(maxQueue)
+                    .maxWait(Duration.ofMillis(maxWaitMillis))
+                    .concurrency(initialConcurrency, minConcurrency, maxConcurrency)
+                    .latencyThreshold(Duration.ofSeconds(latencyThresholdSeconds))
+                    .backoff(backoff)
+                .build();
+    }
+
+    /**
+     * @param expectedCompletionTokens ChatModel 预扣 tpm 时为输出预留的 token 数（请求未指定 maxTokens 时）
+     */
+    @Bean
+    public static RateLimitedModelPostProcessor rateLimitedModelPostProcessor(ObjectProvider<DashScopeRateLimiter> limiter,
+                                                                              @Value("${dashscope.limit.expected-completion-tokens:512}") int expectedCompletionTokens)
+    {
+        return new RateLimitedModelPostProcessor(limiter, expectedCompletionTokens);
+    }
+
+    /**
+     * 只包装 DashScope 叶子模型，且最先执行（位于装饰链最内层）：指标等外层装饰器统计的耗时包含排队时间，
+     * 组合了其他 ChatModel Bean 的装饰器不会再被重复限流。
+     * 需要实现 Ordered 且 @Bean 返回具体类型，否则容器注册 BeanPostProcessor 时无法识别顺序
+     */
+    public static class RateLimitedModelPostProcessor implements BeanPostProcessor, Ordered
+    {
+        private final ObjectProvider<DashScopeRateLimiter> limiter;
+        private final int expectedCompletionTokens;
+
+        public RateLimitedModelPostProcessor(ObjectProvider<DashScopeRateLimiter> limiter, int expectedCompletionTokens)
+        {
+            this.limiter = limiter;
+            this.expectedCompletionTokens = expectedCompletionTokens;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+            if (bean instanceof DashScopeChatModel chatModel)
+            {
+                return new RateLimitedChatModel(chatModel, limiter.getObject(), expectedCompletionTokens);
+            }
+            if (bean instanceof DashScopeEmbeddingModel embeddingModel)
+            {
+                return new RateLimitedEmbeddingModel(embeddingModel, limiter.getObject());
+            }
+            if (bean instanceof DashScopeImageModel imageModel)
+            {
+                return new RateLimitedImageModel(imageModel, limiter.getObject());
+            }
+            if (bean instanceof DashScopeSpeechSynthesisModel speechModel)
+            {
+                return new RateLimitedSpeechSynthesisModel(speechModel, limiter.getObject());
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
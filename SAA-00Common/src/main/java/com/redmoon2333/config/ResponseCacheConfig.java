@@ -0,0 +1,101 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.model.CachingChatModel;
+import com.redmoon2333.model.RedisResponseCacheStore;
+import com.redmoon2333.model.ResponseCacheStore;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * 所有 ChatModel Bean 包一层 CachingChatModel，同步调用命中缓存时不再请求模型
+ * <p>
+ * 只在应用配置了 chat.cache.enabled=true 时加载；Redis 二级缓存另需 chat.cache.redis.enabled=true
+ * 且应用引入了 spring-boot-starter-data-redis，否则只用本机缓存
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.cache.enabled", havingValue = "true")
+public class ResponseCacheConfig
+{
+    /**
+     * @param maxEntries            本机缓存条数上限，超出按 LRU 淘汰
+     * @param ttlSeconds            缓存有效期
+     * @param cacheNonDeterministic 温度不为 0 的请求是否也缓存
+     */
+    @Bean
+    public static CachingChatModelPostProcessor cachingChatModelPostProcessor(
+            ObjectProvider<ResponseCacheStore> remoteStore,
+            @Value("${chat.cache.max-entries:1000}") int maxEntries,
+            @Value("${chat.cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${chat.cache.cache-nondeterministic:false}") boolean cacheNonDeterministic)
+    {
+        return new CachingChatModelPostProcessor(remoteStore, maxEntries, Duration.ofSeconds(ttlSeconds),
+                cacheNonDeterministic);
+    }
+
+    /**
+     * Redis 二级缓存，类路径上没有 spring-data-redis 时整段跳过，不会加载 Redis 相关类
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.data.redis.core.StringRedisTemplate")
+    @ConditionalOnProperty(name = "chat.cache.redis.enabled", havingValue = "true")
+    static class RedisTierConfig
+    {
+        @Bean
+        public ResponseCacheStore redisResponseCacheStore(StringRedisTemplate redisTemplate)
+        {
+            return new RedisResponseCacheStore(redisTemplate);
+        }
+    }
+
+    /**
+     * 在限流装饰器之后执行（位于限流外层），命中缓存的请求不占用 DashScope 限流许可
+     */
+    public static class CachingChatModelPostProcessor implements BeanPostProcessor, Ordered
+    {
+        private final ObjectProvider<ResponseCacheStore> remoteStore;
+        private final int maxEntries;
+        private final Duration ttl;
+        private final boolean cacheNonDeterministic;
+
+        public CachingChatModelPostProcessor(ObjectProvider<ResponseCacheStore> remoteStore, int maxEntries,
+                                             Duration ttl, boolean cacheNonDeterministic)
+        {
+            this.remoteStore = remoteStore;
+            this.maxEntries = maxEntries;
+            this.ttl = ttl;
+            this.cacheNonDeterministic = cacheNonDeterministic;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+            if (bean instanceof ChatModel chatModel && !(bean instanceof CachingChatModel))
+            {
+                return CachingChatModel.builder(chatModel)
+                            .maxEntries(maxEntries)
+                            .ttl(ttl)
+                            .cacheNonDeterministic(cacheNonDeterministic)
+                            .remoteStore(remoteStore.getIfAvailable())
+                            .remoteKeyPrefix("chat_response_cache:" + beanName + ":")
+                        .build();
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.redmoon2333.controller;
+
+import com.redmoon2333.limit.RateLimitRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 客户端限流拒绝统一返回 429，并告知客户端多久后重试
+ */
+@RestControllerAdvice
+public class RateLimitExceptionHandler
+{
+    @ExceptionHandler(RateLimitRejectedException.class)
+    public ResponseEntity<String> rateLimited(RateLimitRejectedException e)
+    {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
+    }
+}
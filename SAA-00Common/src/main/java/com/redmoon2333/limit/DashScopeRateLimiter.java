@@ -0,0 +1,483 @@
+package com.redmoon2333.limit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * DashScope 客户端限流，按 API Key + 模型 分别计算
+ * <ul>
+ *     <li>令牌桶：每分钟请求数（rpm）和每分钟 token 数（tpm），tpm 先按估算扣减，调用结束后按实际用量多退少补</li>
+ *     <li>AIMD 自适应并发：成功且延迟正常时并发上限 +1/limit，遇到 429 或延迟超过阈值时乘以 backoff，冷却期内只降一次</li>
+ *     <li>有界等待队列：条件不满足的请求最多等待 maxWait，排队数超过 maxQueue 直接拒绝，避免请求无限堆积</li>
+ * </ul>
+ * 被拒绝时抛出 RateLimitRejectedException，调用方不应再重试，以免放大 429。
+ */
+public class DashScopeRateLimiter
+{
+    private static final Logger log = LoggerFactory.getLogger(DashScopeRateLimiter.class);
+
+    // DashScope 错误响应 {"code":"Throttling.RateQuota","message":...}
+    private static final Pattern THROTTLING_CODE = Pattern.compile("\"code\"\\s*:\\s*\"Throttling[\\w.]*\"");
+
+    private final String keyHash;
+    private final int requestsPerMinute;
+    private final long tokensPerMinute;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final int initialConcurrency;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long latencyThresholdNanos;
+    private final double backoff;
+    private final long decreaseCooldownNanos;
+
+    private final Map<String, KeyState> states = new ConcurrentHashMap<>();
+
+    private DashScopeRateLimiter(Builder builder)
+    {
+        this.keyHash = builder.apiKey == null ? "default" : sha256(builder.apiKey).substring(0, 8);
+        this.requestsPerMinute = builder.requestsPerMinute;
+        this.tokensPerMinute = builder.tokensPerMinute;
+        this.maxQueue = builder.maxQueue;
+        this.maxWaitNanos = builder.maxWait.toNanos();
+        this.initialConcurrency = builder.initialConcurrency;
+        this.minConcurrency = builder.minConcurrency;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.latencyThresholdNanos = builder.latencyThreshold.toNanos();
+        this.backoff = builder.backoff;
+        this.decreaseCooldownNanos = builder.decreaseCooldown.toNanos();
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    // 日志和 key 里只出现 API Key 的摘要前缀
+    private static String sha256(String text)
+    {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 同步调用
+     * @param estimatedTokens 预估 token 数，用于 tpm 预扣；不消耗 token 的调用传 0
+     * @param actualTokens    从结果中取实际 token 数，取不到返回负数
+     */
+    public <T> T execute(String model, long estimatedTokens, Supplier<T> call, ToLongFunction<T> actualTokens)
+    {
+        KeyState state = acquire(model, estimatedTokens);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            state.release(System.nanoTime() - start, false);
+            state.reconcile(estimatedTokens, actualTokens.applyAsLong(result));
+            return result;
+        } catch (RuntimeException e) {
+            state.release(System.nanoTime() - start, isThrottled(e));
+            throw e;
+        }
+    }
+
+    /**
+     * 流式调用：订阅时在 boundedElastic 上排队获取许可，流结束时归还
+     * <p>
+     * 许可由 Lease 持有，正常结束、出错、取消、排队期间被取消四条路径都只归还一次；
+     * call.get() 放在 Flux.defer 里，构造上游时抛出的异常也走出错路径归还许可。
+     */
+    public <T> Flux<T> executeStream(String model, long estimatedTokens, Supplier<Flux<T>> call, ToLongFunction<T> actualTokens)
+    {
+        return Flux.defer(() -> {
+            Lease lease = new Lease(estimatedTokens);
+            Mono<Lease> acquired = Mono.fromCallable(() -> lease.bind(acquire(model, estimatedTokens)))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    // 排队中被取消时 acquire 仍会完成，结果被丢弃，由 Lease 在拿到许可后立即归还
+                    .doOnCancel(lease::cancel);
+            return Flux.usingWhen(acquired,
+                    held -> Flux.defer(call).doOnNext(element -> held.record(actualTokens.applyAsLong(element))),
+                    held -> Mono.fromRunnable(() -> held.finish(false)),
+                    (held, error) -> Mono.fromRunnable(() -> held.finish(isThrottled(error))),
+                    held -> Mono.fromRunnable(held::cancel));
+        });
+    }
+
+    private KeyState acquire(String model, long estimatedTokens)
+    {
+        String key = keyHash + ":" + (model == null ? "default" : model);
+        return states.computeIfAbsent(key, KeyState::new).acquire(estimatedTokens);
+    }
+
+    /**
+     * 限流类错误：HTTP 状态码 429，或响应体中 DashScope 错误码为 Throttling / Throttling.RateQuota 等
+     * 只认状态码和错误码，不按消息里的 "429" 子串判断，避免 request_id、token 数等数字误判
+     */
+    static boolean isThrottled(Throwable error)
+    {
+        for (Throwable cause = error; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof RestClientResponseException e)
+            {
+                return e.getStatusCode().value() == 429 || hasThrottlingCode(e.getResponseBodyAsString());
+            }
+            if (cause instanceof WebClientResponseException e)
+            {
+                return e.getStatusCode().value() == 429 || hasThrottlingCode(e.getResponseBodyAsString());
+            }
+            // Spring AI 的 RetryUtils 把错误响应体拼进 TransientAiException / NonTransientAiException 的消息里
+            if (hasThrottlingCode(cause.getMessage()))
+            {
+                return true;
+            }
+            if (cause.getCause() == cause)
+            {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasThrottlingCode(String body)
+    {
+        return body != null && THROTTLING_CODE.matcher(body).find();
+    }
+
+    /**
+     * 单个 Key + 模型的限流状态，所有字段由 lock 保护
+     */
+    private class KeyState
+    {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+
+        private double limit = initialConcurrency;
+        private int inflight;
+        private int waiting;
+        private long lastDecreaseNanos;
+
+        private KeyState(String key)
+        {
+            this.key = key;
+            this.requests = new TokenBucket(requestsPerMinute);
+            this.tokens = new TokenBucket(tokensPerMinute);
+        }
+
+        private KeyState acquire(long estimatedTokens)
+        {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            lock.lock();
+            try {
+                if (waiting >= maxQueue && !available(estimatedTokens))
+                {
+                    throw new RateLimitRejectedException(key, "等待队列已满(" + maxQueue + ")", 1);
+                }
+                waiting++;
+                try {
+                    while (!available(estimatedTokens))
+                    {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0)
+                        {
+                            throw new RateLimitRejectedException(key, "等待超时", retryAfterSeconds(estimatedTokens));
+                        }
+                        // 令牌桶按时间补充，等到下一次可能满足时再检查；并发许可由 release 唤醒
+                        long refill = Math.max(requests.nanosUntil(1), tokens.nanosUntil(estimatedTokens));
+                        changed.awaitNanos(refill > 0 ? Math.min(remaining, refill) : remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RateLimitRejectedException(key, "等待被中断", 1);
+                } finally {
+                    waiting--;
+                }
+                requests.take(1);
+                tokens.take(estimatedTokens);
+                inflight++;
+                return this;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean available(long estimatedTokens)
+        {
+            return inflight < (int) limit && requests.canTake(1) && tokens.canTake(estimatedTokens);
+        }
+
+        private long retryAfterSeconds(long estimatedTokens)
+        {
+            long nanos = Math.max(requests.nanosUntil(1), tokens.nanosUntil(estimatedTokens));
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos) + 1);
+        }
+
+        private void release(long latencyNanos, boolean throttled)
+        {
+            lock.lock();
+            try {
+                inflight--;
+                if (throttled || latencyNanos > latencyThresholdNanos)
+                {
+                    long now = System.nanoTime();
+                    if (now - lastDecreaseNanos > decreaseCooldownNanos)
+                    {
+                        limit = Math.max(minConcurrency, limit * backoff);
+                        lastDecreaseNanos = now;
+                        log.warn("{} {}，并发上限降为 {}", key, throttled ? "触发 429" : "延迟过高", (int) limit);
+                    }
+                }
+                else if (latencyNanos > 0)
+                {
+                    limit = Math.min(maxConcurrency, limit + 1 / limit);
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void reconcile(long estimatedTokens, long actualTokens)
+        {
+            if (actualTokens < 0 || actualTokens == estimatedTokens)
+            {
+                return;
+            }
+            lock.lock();
+            try {
+                // 多扣的退回，少扣的补扣（允许为负，后续请求等待）
+                tokens.take(actualTokens - estimatedTokens);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 一次流式调用持有的许可
+     * <p>
+     * bind 与 cancel 可能并发：bind 先写 state 再读 cancelled，cancel 先写 cancelled 再读 state，
+     * 两者至少有一方看到对方，released 保证只归还一次。
+     */
+    private static final class Lease
+    {
+        private final long estimatedTokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile KeyState state;
+        private volatile boolean cancelled;
+        private volatile long usage = -1;
+        private long start;
+
+        private Lease(long estimatedTokens)
+        {
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        private Lease bind(KeyState state)
+        {
+            this.start = System.nanoTime();
+            this.state = state;
+            if (cancelled)
+            {
+                release(0, false);
+            }
+            return this;
+        }
+
+        private void record(long tokens)
+        {
+            if (tokens > 0)
+            {
+                usage = tokens;
+            }
+        }
+
+        private void finish(boolean throttled)
+        {
+            release(System.nanoTime() - start, throttled);
+        }
+
+        /**
+         * 取消时延迟不完整，不参与 AIMD 调整
+         */
+        private void cancel()
+        {
+            cancelled = true;
+            release(0, false);
+        }
+
+        private void release(long latencyNanos, boolean throttled)
+        {
+            KeyState current = state;
+            if (current != null && released.compareAndSet(false, true))
+            {
+                current.release(latencyNanos, throttled);
+                current.reconcile(estimatedTokens, usage);
+            }
+        }
+    }
+
+    /**
+     * 每分钟补满 capacity 的令牌桶，capacity <= 0 表示不限制
+     */
+    private static class TokenBucket
+    {
+        private final long capacity;
+        private final double refillPerNano;
+        private double available;
+        private long lastRefillNanos = System.nanoTime();
+
+        private TokenBucket(long perMinute)
+        {
+            this.capacity = perMinute;
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.available = perMinute;
+        }
+
+        private boolean canTake(long amount)
+        {
+            if (capacity <= 0)
+            {
+                return true;
+            }
+            refill();
+            // 单次请求超过桶容量时，桶满即放行，否则永远等不到
+            return available >= Math.min(amount, capacity);
+        }
+
+        private void take(long amount)
+        {
+            if (capacity > 0)
+            {
+                refill();
+                available -= amount;
+                if (available > capacity)
+                {
+                    available = capacity;
+                }
+            }
+        }
+
+        private long nanosUntil(long amount)
+        {
+            if (capacity <= 0)
+            {
+                return 0;
+            }
+            refill();
+            double missing = Math.min(amount, capacity) - available;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+        }
+
+        private void refill()
+        {
+            long now = System.nanoTime();
+            available = Math.min(capacity, available + (now - lastRefillNanos) * refillPerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    public static class Builder
+    {
+        private String apiKey;
+        private int requestsPerMinute = 60;
+        private long tokensPerMinute = 100_000;
+        private int maxQueue = 100;
+        private Duration maxWait = Duration.ofSeconds(10);
+        private int initialConcurrency = 8;
+        private int minConcurrency = 1;
+        private int maxConcurrency = 64;
+        private Duration latencyThreshold = Duration.ofSeconds(30);
+        private double backoff = 0.5;
+        private Duration decreaseCooldown = Duration.ofSeconds(2);
+
+        public Builder apiKey(String apiKey)
+        {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder requestsPerMinute(int requestsPerMinute)
+        {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+
+        public Builder tokensPerMinute(long tokensPerMinute)
+        {
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        public Builder maxQueue(int maxQueue)
+        {
+            this.maxQueue = maxQueue;
+            return this;
+        }
+
+        public Builder maxWait(Duration maxWait)
+        {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public Builder concurrency(int initial, int min, int max)
+        {
+            this.initialConcurrency = initial;
+            this.minConcurrency = min;
+            this.maxConcurrency = max;
+            return this;
+        }
+
+        /**
+         * 单次调用超过该耗时视为过载信号，与 429 一样触发降并发
+         */
+        public Builder latencyThreshold(Duration latencyThreshold)
+        {
+            this.latencyThreshold = latencyThreshold;
+            return this;
+        }
+
+        public Builder backoff(double backoff)
+        {
+            this.backoff = backoff;
+            return this;
+        }
+
+        public Builder decreaseCooldown(Duration decreaseCooldown)
+        {
+            this.decreaseCooldown = decreaseCooldown;
+            return this;
+        }
+
+        public DashScopeRateLimiter build()
+        {
+            return new DashScopeRateLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.redmoon2333.limit;
+
+/**
+ * 客户端限流拒绝：队列已满或等待超时，请求没有发到 DashScope
+ */
+public class RateLimitRejectedException extends RuntimeException
+{
+    private final String key;
+    private final long retryAfterSeconds;
+
+    public RateLimitRejectedException(String key, String reason, long retryAfterSeconds)
+    {
+        super("DashScope 客户端限流[" + key + "]: " + reason);
+        this.key = key;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public long getRetryAfterSeconds()
+    {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,75 @@
+package com.redmoon2333.limit;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+/**
+ * 经过 DashScopeRateLimiter 的 ChatModel
+ * tpm 预扣 = 输入字符数 / 2 + 输出预留（请求里的 maxTokens，没有则用 expectedCompletionTokens），结束后按 usage 校正
+ */
+public class RateLimitedChatModel implements ChatModel
+{
+    private final ChatModel delegate;
+    private final DashScopeRateLimiter limiter;
+    private final int expectedCompletionTokens;
+
+    public RateLimitedChatModel(ChatModel delegate, DashScopeRateLimiter limiter, int expectedCompletionTokens)
+    {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.expectedCompletionTokens = expectedCompletionTokens;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        return limiter.execute(model(prompt), estimate(prompt), () -> delegate.call(prompt), RateLimitedChatModel::totalTokens);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return limiter.executeStream(model(prompt), estimate(prompt), () -> delegate.stream(prompt), RateLimitedChatModel::totalTokens);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return delegate.getDefaultOptions();
+    }
+
+    private String model(Prompt prompt)
+    {
+        if (prompt.getOptions() != null && prompt.getOptions().getModel() != null)
+        {
+            return prompt.getOptions().getModel();
+        }
+        return delegate.getDefaultOptions() == null ? null : delegate.getDefaultOptions().getModel();
+    }
+
+    private long estimate(Prompt prompt)
+    {
+        long chars = 0;
+        for (Message message : prompt.getInstructions())
+        {
+            chars += message.getText() == null ? 0 : message.getText().length();
+        }
+        Integer maxTokens = prompt.getOptions() == null ? null : prompt.getOptions().getMaxTokens();
+        return (chars + 1) / 2 + (maxTokens != null ? maxTokens : expectedCompletionTokens);
+    }
+
+    private static long totalTokens(ChatResponse response)
+    {
+        if (response == null || response.getMetadata() == null)
+        {
+            return -1;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        return usage == null || usage.getTotalTokens() == null || usage.getTotalTokens() == 0 ? -1 : usage.getTotalTokens();
+    }
+}
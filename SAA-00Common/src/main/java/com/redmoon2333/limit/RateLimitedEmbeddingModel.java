@@ -0,0 +1,56 @@
+package com.redmoon2333.limit;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * 经过 DashScopeRateLimiter 的 EmbeddingModel，tpm 预扣 = 文本字符数 / 2，结束后按 usage 校正
+ */
+public class RateLimitedEmbeddingModel implements EmbeddingModel
+{
+    private static final String DEFAULT_MODEL = "embedding";
+
+    private final EmbeddingModel delegate;
+    private final DashScopeRateLimiter limiter;
+
+    public RateLimitedEmbeddingModel(EmbeddingModel delegate, DashScopeRateLimiter limiter)
+    {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request)
+    {
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel() : DEFAULT_MODEL;
+        long chars = request.getInstructions().stream().mapToLong(text -> text == null ? 0 : text.length()).sum();
+        return limiter.execute(model, (chars + 1) / 2, () -> delegate.call(request), RateLimitedEmbeddingModel::totalTokens);
+    }
+
+    @Override
+    public float[] embed(Document document)
+    {
+        long chars = document.getText() == null ? 0 : document.getText().length();
+        return limiter.execute(DEFAULT_MODEL, (chars + 1) / 2, () -> delegate.embed(document), vector -> -1);
+    }
+
+    @Override
+    public int dimensions()
+    {
+        return delegate.dimensions();
+    }
+
+    private static long totalTokens(EmbeddingResponse response)
+    {
+        if (response == null || response.getMetadata() == null)
+        {
+            return -1;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        return usage == null || usage.getTotalTokens() == null || usage.getTotalTokens() == 0 ? -1 : usage.getTotalTokens();
+    }
+}
@@ -0,0 +1,30 @@
+package com.redmoon2333.limit;
+
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+
+/**
+ * 经过 DashScopeRateLimiter 的 ImageModel，文生图按次计费，只占 rpm 和并发，不占 tpm
+ */
+public class RateLimitedImageModel implements ImageModel
+{
+    private static final String DEFAULT_MODEL = "image";
+
+    private final ImageModel delegate;
+    private final DashScopeRateLimiter limiter;
+
+    public RateLimitedImageModel(ImageModel delegate, DashScopeRateLimiter limiter)
+    {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ImageResponse call(ImagePrompt request)
+    {
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel() : DEFAULT_MODEL;
+        return limiter.execute(model, 0, () -> delegate.call(request), response -> -1);
+    }
+}
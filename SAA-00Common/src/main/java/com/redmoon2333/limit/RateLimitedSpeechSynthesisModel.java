@@ -0,0 +1,45 @@
+package com.redmoon2333.limit;
+
+import com.alibaba.cloud.ai.dashscope.audio.DashScopeSpeechSynthesisOptions;
+import com.alibaba.cloud.ai.dashscope.audio.synthesis.SpeechSynthesisModel;
+import com.alibaba.cloud.ai.dashscope.audio.synthesis.SpeechSynthesisPrompt;
+import com.alibaba.cloud.ai.dashscope.audio.synthesis.SpeechSynthesisResponse;
+import reactor.core.publisher.Flux;
+
+/**
+ * 经过 DashScopeRateLimiter 的 SpeechSynthesisModel，语音合成按字符计费，只占 rpm 和并发，不占 tpm
+ */
+public class RateLimitedSpeechSynthesisModel implements SpeechSynthesisModel
+{
+    private static final String DEFAULT_MODEL = "speech";
+
+    private final SpeechSynthesisModel delegate;
+    private final DashScopeRateLimiter limiter;
+
+    public RateLimitedSpeechSynthesisModel(SpeechSynthesisModel delegate, DashScopeRateLimiter limiter)
+    {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public SpeechSynthesisResponse call(SpeechSynthesisPrompt prompt)
+    {
+        return limiter.execute(model(prompt), 0, () -> delegate.call(prompt), response -> -1);
+    }
+
+    @Override
+    public Flux<SpeechSynthesisResponse> stream(SpeechSynthesisPrompt prompt)
+    {
+        return limiter.executeStream(model(prompt), 0, () -> delegate.stream(prompt), response -> -1);
+    }
+
+    private static String model(SpeechSynthesisPrompt prompt)
+    {
+        if (prompt.getOptions() instanceof DashScopeSpeechSynthesisOptions options && options.getModel() != null)
+        {
+            return options.getModel();
+        }
+        return DEFAULT_MODEL;
+    }
+}
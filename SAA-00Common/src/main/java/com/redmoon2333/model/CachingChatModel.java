@@ -0,0 +1,357 @@
+package com.redmoon2333.model;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.EmptyUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 同步调用的精确匹配缓存
+ * <p>
+ * 看板每分钟轮询同样的 prompt，结果在温度为 0 时是确定的，没必要每次都调用模型。
+ * <ul>
+ *     <li>缓存键：模型名 + 完整序列化的 options + 全部消息（类型和文本）的 SHA-256</li>
+ *     <li>只缓存温度为 0 的请求；cacheNonDeterministic=true 时所有请求都缓存</li>
+ *     <li>一级缓存为本机 LRU + TTL；配置了 ResponseCacheStore（如 Redis）时作为二级缓存（只存回答文本），多实例共享</li>
+ *     <li>请求头 X-Cache-Bypass: true 跳过读缓存（结果仍会写入），响应头 X-Cache 标记 HIT/MISS/BYPASS</li>
+ *     <li>命中时返回的 usage 为空，metadata 中 cache-hit=true</li>
+ *     <li>流式调用和带工具的请求不缓存</li>
+ * </ul>
+ */
+public class CachingChatModel implements ChatModel
+{
+    private static final Logger log = LoggerFactory.getLogger(CachingChatModel.class);
+
+    public static final String BYPASS_HEADER = "X-Cache-Bypass";
+    public static final String STATUS_HEADER = "X-Cache";
+    /**
+     * 命中缓存时 ChatResponseMetadata 中的标记
+     */
+    public static final String CACHE_HIT_METADATA = "cache-hit";
+
+    private final ChatModel delegate;
+    private final LocalCache localCache;
+    private final ResponseCacheStore remoteStore;
+    private final String remoteKeyPrefix;
+    private final Duration ttl;
+    private final boolean cacheNonDeterministic;
+
+    private CachingChatModel(Builder builder)
+    {
+        this.delegate = builder.delegate;
+        this.ttl = builder.ttl;
+        this.localCache = new LocalCache(builder.maxEntries, builder.ttl.toNanos());
+        this.remoteStore = builder.remoteStore;
+        this.remoteKeyPrefix = builder.remoteKeyPrefix;
+        this.cacheNonDeterministic = builder.cacheNonDeterministic;
+    }
+
+    public static Builder builder(ChatModel delegate)
+    {
+        return new Builder(delegate);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        if (!cacheable(prompt))
+        {
+            return delegate.call(prompt);
+        }
+
+        String key = cacheKey(prompt);
+        if (key == null)
+        {
+            return delegate.call(prompt);
+        }
+        boolean bypass = bypassRequested();
+        if (!bypass)
+        {
+            ChatResponse cached = localCache.get(key);
+            if (cached == null)
+            {
+                cached = readRemote(key);
+            }
+            if (cached != null)
+            {
+                markStatus("HIT");
+                return cacheHit(cached);
+            }
+        }
+
+        ChatResponse response = delegate.call(prompt);
+        localCache.put(key, response);
+        writeRemote(key, response);
+        markStatus(bypass ? "BYPASS" : "MISS");
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return delegate.stream(prompt);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return delegate.getDefaultOptions();
+    }
+
+    private boolean cacheable(Prompt prompt)
+    {
+        ChatOptions options = prompt.getOptions();
+        if (options instanceof ToolCallingChatOptions toolOptions
+                && (!toolOptions.getToolCallbacks().isEmpty() || !toolOptions.getToolNames().isEmpty()))
+        {
+            return false;
+        }
+        if (cacheNonDeterministic)
+        {
+            return true;
+        }
+        Double temperature = options != null ? options.getTemperature() : null;
+        if (temperature == null && delegate.getDefaultOptions() != null)
+        {
+            temperature = delegate.getDefaultOptions().getTemperature();
+        }
+        return temperature != null && temperature == 0;
+    }
+
+    /**
+     * 缓存键包含按实际类型完整序列化的 options，DashScope 专有参数（enableSearch、seed、responseFormat 等）不同的请求不会共用缓存
+     * @return options 无法序列化时返回 null，该请求不缓存
+     */
+    private String cacheKey(Prompt prompt)
+    {
+        ChatOptions options = prompt.getOptions() != null ? prompt.getOptions() : delegate.getDefaultOptions();
+        StringBuilder key = new StringBuilder();
+        if (options != null)
+        {
+            String model = options.getModel();
+            if (model == null && delegate.getDefaultOptions() != null)
+            {
+                model = delegate.getDefaultOptions().getModel();
+            }
+            try {
+                key.append(model).append('|').append(options.getClass().getName()).append(ModelOptionsUtils.toJsonString(options));
+            } catch (RuntimeException e) {
+                log.debug("options 无法序列化，不缓存: {}", options.getClass().getName(), e);
+                return null;
+            }
+        }
+        for (Message message : prompt.getInstructions())
+        {
+            key.append('\u0001').append(message.getMessageType().getValue()).append('\u0002').append(message.getText());
+        }
+        return sha256(key.toString());
+    }
+
+    /**
+     * 命中缓存的回答没有消耗 token：usage 置空，并在 metadata 中标记 cache-hit，避免下游按原始 usage 重复统计
+     */
+    private static ChatResponse cacheHit(ChatResponse cached)
+    {
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                    .id(cached.getMetadata().getId())
+                    .model(cached.getMetadata().getModel())
+                    .usage(new EmptyUsage())
+                    .keyValue(CACHE_HIT_METADATA, true)
+                .build();
+        return ChatResponse.builder()
+                    .generations(cached.getResults())
+                    .metadata(metadata)
+                .build();
+    }
+
+    private static String sha256(String text)
+    {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ChatResponse readRemote(String key)
+    {
+        if (remoteStore == null)
+        {
+            return null;
+        }
+        try {
+            String text = remoteStore.get(remoteKeyPrefix + key);
+            if (text == null)
+            {
+                return null;
+            }
+            ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+            localCache.put(key, response);
+            return response;
+        } catch (RuntimeException e) {
+            // 二级缓存不可用时退化为只用本机缓存
+            log.warn("读取二级回答缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRemote(String key, ChatResponse response)
+    {
+        if (remoteStore == null || response.getResult() == null || response.getResult().getOutput().getText() == null)
+        {
+            return;
+        }
+        try {
+            remoteStore.set(remoteKeyPrefix + key, response.getResult().getOutput().getText(), ttl);
+        } catch (RuntimeException e) {
+            log.warn("写入二级回答缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static boolean bypassRequested()
+    {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)
+        {
+            HttpServletRequest request = attributes.getRequest();
+            return "true".equalsIgnoreCase(request.getHeader(BYPASS_HEADER));
+        }
+        return false;
+    }
+
+    private static void markStatus(String status)
+    {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)
+        {
+            HttpServletResponse response = attributes.getResponse();
+            if (response != null && !response.isCommitted())
+            {
+                response.setHeader(STATUS_HEADER, status);
+            }
+        }
+    }
+
+    /**
+     * 本机 LRU + TTL，访问量是看板级别，整体加锁即可
+     */
+    private static final class LocalCache
+    {
+        private final long ttlNanos;
+        private final Map<String, CachedResponse> entries;
+
+        private LocalCache(int maxEntries, long ttlNanos)
+        {
+            this.ttlNanos = ttlNanos;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest)
+                {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private synchronized ChatResponse get(String key)
+        {
+            CachedResponse entry = entries.get(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            if (System.nanoTime() - entry.createdNanos() > ttlNanos)
+            {
+                entries.remove(key);
+                return null;
+            }
+            return entry.response();
+        }
+
+        private synchronized void put(String key, ChatResponse response)
+        {
+            entries.put(key, new CachedResponse(response, System.nanoTime()));
+        }
+
+        private record CachedResponse(ChatResponse response, long createdNanos)
+        {
+        }
+    }
+
+    public static class Builder
+    {
+        private final ChatModel delegate;
+        private int maxEntries = 1000;
+        private Duration ttl = Duration.ofMinutes(5);
+        private boolean cacheNonDeterministic;
+        private ResponseCacheStore remoteStore;
+        private String remoteKeyPrefix = "chat_response_cache:";
+
+        private Builder(ChatModel delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        public Builder maxEntries(int maxEntries)
+        {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl)
+        {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * 温度不为 0 的请求也缓存（调用方明确接受相同问题返回相同回答）
+         */
+        public Builder cacheNonDeterministic(boolean cacheNonDeterministic)
+        {
+            this.cacheNonDeterministic = cacheNonDeterministic;
+            return this;
+        }
+
+        /**
+         * 二级缓存，为 null 时只用本机缓存
+         */
+        public Builder remoteStore(ResponseCacheStore remoteStore)
+        {
+            this.remoteStore = remoteStore;
+            return this;
+        }
+
+        public Builder remoteKeyPrefix(String remoteKeyPrefix)
+        {
+            this.remoteKeyPrefix = remoteKeyPrefix;
+            return this;
+        }
+
+        public CachingChatModel build()
+        {
+            return new CachingChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.redmoon2333.model;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * 基于 Redis 的二级回答缓存，多实例共享
+ */
+public class RedisResponseCacheStore implements ResponseCacheStore
+{
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisResponseCacheStore(StringRedisTemplate redisTemplate)
+    {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String get(String key)
+    {
+        return redisTemplate.opsForValue().get(key);
+    }
+
+    @Override
+    public void set(String key, String text, Duration ttl)
+    {
+        redisTemplate.opsForValue().set(key, text, ttl);
+    }
+}
@@ -0,0 +1,16 @@
+package com.redmoon2333.model;
+
+import java.time.Duration;
+
+/**
+ * CachingChatModel 的二级缓存，只存回答文本；实现出错时抛 RuntimeException，调用方退化为只用本机缓存
+ */
+public interface ResponseCacheStore
+{
+    /**
+     * @return 未命中返回 null
+     */
+    String get(String key);
+
+    void set(String key, String text, Duration ttl);
+}
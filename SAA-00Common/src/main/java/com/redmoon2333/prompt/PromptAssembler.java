@@ -0,0 +1,134 @@
+package com.redmoon2333.prompt;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 前缀稳定的 Prompt 组装
+ * <p>
+ * DashScope 对相同前缀的请求会命中上下文缓存（qwen-plus/qwen-max 等隐式缓存，前缀达到一定长度后生效），命中部分按折扣计费、首 token 更快。
+ * 前提是每次请求的前缀逐字节相同，因此固定按下面的顺序排列：
+ * <ol>
+ *     <li>系统消息：系统提示词 + 静态参考内容（检索结果等），换行统一为 \n、去掉首尾空白</li>
+ *     <li>历史消息</li>
+ *     <li>本轮用户消息</li>
+ * </ol>
+ * 工具按名称排序，工具定义在请求里的顺序也保持稳定。变化的内容（用户输入、时间等）不要放进系统提示词。
+ */
+public final class PromptAssembler
+{
+    private String system;
+    private final List<String> contexts = new ArrayList<>();
+    private final List<Message> history = new ArrayList<>();
+    private String user;
+    private ChatOptions options;
+
+    private PromptAssembler()
+    {
+    }
+
+    public static PromptAssembler builder()
+    {
+        return new PromptAssembler();
+    }
+
+    public PromptAssembler system(String system)
+    {
+        this.system = system;
+        return this;
+    }
+
+    /**
+     * 静态参考内容，按添加顺序拼在系统提示词之后
+     */
+    public PromptAssembler context(String context)
+    {
+        if (context != null && !context.isBlank())
+        {
+            this.contexts.add(context);
+        }
+        return this;
+    }
+
+    public PromptAssembler history(List<Message> history)
+    {
+        this.history.addAll(history);
+        return this;
+    }
+
+    public PromptAssembler user(String user)
+    {
+        this.user = user;
+        return this;
+    }
+
+    public PromptAssembler options(ChatOptions options)
+    {
+        this.options = options;
+        return this;
+    }
+
+    public Prompt build()
+    {
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        String prefix = systemText();
+        if (!prefix.isEmpty())
+        {
+            messages.add(new SystemMessage(prefix));
+        }
+        messages.addAll(history);
+        if (user != null)
+        {
+            messages.add(new UserMessage(user));
+        }
+        return options == null ? new Prompt(messages) : new Prompt(messages, stableTools(options));
+    }
+
+    private String systemText()
+    {
+        StringBuilder text = new StringBuilder();
+        if (system != null)
+        {
+            text.append(normalize(system));
+        }
+        for (String context : contexts)
+        {
+            if (!text.isEmpty())
+            {
+                text.append("\n\n");
+            }
+            text.append(normalize(context));
+        }
+        return text.toString();
+    }
+
+    private static String normalize(String text)
+    {
+        return text.replace("\r\n", "\n").strip();
+    }
+
+    private static ChatOptions stableTools(ChatOptions options)
+    {
+        if (!(options instanceof ToolCallingChatOptions toolOptions) || toolOptions.getToolCallbacks().isEmpty()
+                && toolOptions.getToolNames().isEmpty())
+        {
+            return options;
+        }
+        ToolCallingChatOptions copy = (ToolCallingChatOptions) toolOptions.copy();
+        List<ToolCallback> callbacks = new ArrayList<>(toolOptions.getToolCallbacks());
+        callbacks.sort(Comparator.comparing(callback -> callback.getToolDefinition().name()));
+        copy.setToolCallbacks(callbacks);
+        copy.setToolNames(new TreeSet<>(toolOptions.getToolNames()));
+        return copy;
+    }
+}
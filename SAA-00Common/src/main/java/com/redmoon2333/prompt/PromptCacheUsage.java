@@ -0,0 +1,105 @@
+package com.redmoon2333.prompt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.metadata.Usage;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从 DashScope 返回的原始 usage 里取出命中上下文缓存的 prompt token 数（prompt_tokens_details.cached_tokens）
+ * <p>
+ * Usage 接口只有总数，缓存明细只在原始 usage 中。先按 prompt_tokens_details.cached_tokens 路径读取，
+ * 取不到再在整个 usage 里查找 cached_tokens 字段；都没有时记为未知（cacheReported=false），
+ * 不当作 0 命中，以免 SDK 字段变化后指标悄悄变成"全部未命中"。
+ */
+public final class PromptCacheUsage
+{
+    private static final Logger log = LoggerFactory.getLogger(PromptCacheUsage.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // 缺字段只告警一次，之后看 cache=unknown 指标
+    private static final AtomicBoolean MISSING_LOGGED = new AtomicBoolean();
+
+    private PromptCacheUsage()
+    {
+    }
+
+    /**
+     * @param cacheReported 原始 usage 中是否带有 cached_tokens；为 false 时 cachedTokens 恒为 0，含义是未知而不是未命中
+     */
+    public record Split(int promptTokens, int cachedTokens, boolean cacheReported)
+    {
+        public int uncachedTokens()
+        {
+            return Math.max(0, promptTokens - cachedTokens);
+        }
+    }
+
+    public static Split of(Usage usage)
+    {
+        if (usage == null || usage.getPromptTokens() == null)
+        {
+            return null;
+        }
+        JsonNode cached = cachedTokens(usage.getNativeUsage());
+        if (cached == null)
+        {
+            if (MISSING_LOGGED.compareAndSet(false, true))
+            {
+                log.warn("usage 中没有 prompt_tokens_details.cached_tokens，上下文缓存命中情况记为 unknown，原始 usage 类型: {}",
+                        usage.getNativeUsage() == null ? null : usage.getNativeUsage().getClass().getName());
+            }
+            return new Split(usage.getPromptTokens(), 0, false);
+        }
+        return new Split(usage.getPromptTokens(), cached.asInt(), true);
+    }
+
+    private static JsonNode cachedTokens(Object nativeUsage)
+    {
+        if (nativeUsage == null)
+        {
+            return null;
+        }
+        try {
+            JsonNode tree = MAPPER.valueToTree(nativeUsage);
+            JsonNode node = tree.path("prompt_tokens_details").path("cached_tokens");
+            if (node.isNumber())
+            {
+                return node;
+            }
+            node = tree.findValue("cached_tokens");
+            return node != null && node.isNumber() ? node : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * chat.prompt.cache.tokens{cache=hit|miss}，两者之和是本次请求的 prompt token 数；
+     * 响应没有带缓存明细时整段记到 cache=unknown
+     */
+    public static Split record(MeterRegistry registry, Tags tags, Usage usage)
+    {
+        Split split = of(usage);
+        if (split == null)
+        {
+            return null;
+        }
+        if (!split.cacheReported())
+        {
+            DistributionSummary.builder("chat.prompt.cache.tokens").tags(tags).tag("cache", "unknown").baseUnit("tokens")
+                    .register(registry).record(split.promptTokens());
+            return split;
+        }
+        DistributionSummary.builder("chat.prompt.cache.tokens").tags(tags).tag("cache", "hit").baseUnit("tokens")
+                .register(registry).record(split.cachedTokens());
+        DistributionSummary.builder("chat.prompt.cache.tokens").tags(tags).tag("cache", "miss").baseUnit("tokens")
+                .register(registry).record(split.uncachedTokens());
+        return split;
+    }
+}
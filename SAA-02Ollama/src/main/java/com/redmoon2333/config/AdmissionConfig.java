@@ -0,0 +1,77 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.limit.AdmissionScheduler;
+import com.redmoon2333.limit.AdmissionScheduler.Priority;
+import com.redmoon2333.model.AdmissionControlledChatModel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 本地 Ollama 的准入调度，CPU 推理同时只能跑少量生成
+ */
+@Configuration
+public class AdmissionConfig
+{
+    // 同时进行的生成数，以及其中批量请求最多能占的数量
+    @Value("${ollama.admission.max-concurrent:2}")
+    private int maxConcurrent;
+    @Value("${ollama.admission.batch-max-concurrent:1}")
+    private int batchMaxConcurrent;
+    // 每个优先级的队列长度，以及单个调用方最多排队数
+    @Value("${ollama.admission.max-queued:32}")
+    private int maxQueued;
+    @Value("${ollama.admission.max-queued-per-caller:4}")
+    private int maxQueuedPerCaller;
+    // 排队期限，超过直接返回 429
+    @Value("${ollama.admission.interactive-max-wait-millis:5000}")
+    private long interactiveMaxWaitMillis;
+    @Value("${ollama.admission.batch-max-wait-millis:120000}")
+    private long batchMaxWaitMillis;
+    // 无样本时假定的单次生成耗时
+    @Value("${ollama.admission.initial-service-millis:3000}")
+    private long initialServiceMillis;
+
+    @Bean
+    public AdmissionScheduler ollamaAdmissionScheduler(MeterRegistry meterRegistry)
+    {
+        AdmissionScheduler scheduler = new AdmissionScheduler(maxConcurrent, batchMaxConcurrent, maxQueued, maxQueuedPerCaller,
+                Duration.ofMillis(interactiveMaxWaitMillis), Duration.ofMillis(batchMaxWaitMillis),
+                Duration.ofMillis(initialServiceMillis));
+
+        Gauge.builder("ollama.admission.running", scheduler, s -> s.stats().running()).register(meterRegistry);
+        Gauge.builder("ollama.admission.queued", scheduler, s -> s.stats().queuedInteractive())
+                .tag("priority", "interactive").register(meterRegistry);
+        Gauge.builder("ollama.admission.queued", scheduler, s -> s.stats().queuedBatch())
+                .tag("priority", "batch").register(meterRegistry);
+        Gauge.builder("ollama.admission.rejected", scheduler, s -> s.stats().rejected()).register(meterRegistry);
+        return scheduler;
+    }
+
+    /**
+     * 带准入调度的本地模型，优先级按请求头决定：OllamaController、路由的 ollama 后端、分级路由的 LOCAL 级都使用它。
+     * 所有生成都要经过调度器，只有预热直接使用 ollamaChatModel：预热只加载模型、只生成 1 个 token，且要在就绪前完成，不应排队
+     */
+    @Bean(name = "admittedOllama")
+    public ChatModel admittedOllama(@Qualifier("ollamaChatModel") ChatModel ollamaChatModel,
+                                    AdmissionScheduler ollamaAdmissionScheduler)
+    {
+        return new AdmissionControlledChatModel(ollamaChatModel, ollamaAdmissionScheduler);
+    }
+
+    /**
+     * 固定按批量优先级调度的本地模型：灰区分类和熔断降级这类内部流量只用批量名额，不挤占交互请求
+     */
+    @Bean(name = "batchOllama")
+    public ChatModel batchOllama(@Qualifier("ollamaChatModel") ChatModel ollamaChatModel,
+                                 AdmissionScheduler ollamaAdmissionScheduler)
+    {
+        return new AdmissionControlledChatModel(ollamaChatModel, ollamaAdmissionScheduler, Priority.BATCH);
+    }
+}
@@ -0,0 +1,37 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.warmup.OllamaWarmup;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class OllamaWarmupConfig
+{
+    // 需要预热的模型，默认就是 spring.ai.ollama.chat.model
+    @Value("${ollama.warmup.models:${spring.ai.ollama.chat.model}}")
+    private List<String> models;
+    // 模型在 Ollama 中的常驻时间，-1 表示永不卸载
+    @Value("${ollama.warmup.keep-alive:30m}")
+    private String keepAlive;
+    // 重新预热间隔，需小于 keep-alive
+    @Value("${ollama.warmup.interval-seconds:600}")
+    private long intervalSeconds;
+    @Value("${ollama.warmup.retry-seconds:10}")
+    private long retrySeconds;
+
+    /**
+     * bean 名称决定健康检查名称 ollamaWarmup，readiness 分组里引用
+     */
+    @Bean(name = "ollamaWarmupHealthIndicator", initMethod = "start", destroyMethod = "stop")
+    public OllamaWarmup ollamaWarmupHealthIndicator(@Qualifier("ollamaChatModel") ChatModel ollamaChatModel)
+    {
+        return new OllamaWarmup(ollamaChatModel, models, keepAlive,
+                Duration.ofSeconds(intervalSeconds), Duration.ofSeconds(retrySeconds));
+    }
+}
@@ -0,0 +1,173 @@
+package com.redmoon2333.config;
+
+import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.redmoon2333.model.ResilientChatModel;
+import com.redmoon2333.model.RoutingChatModel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 云端 DashScope 多模型 + 本地 Ollama，统一挂到自适应路由后面
+ */
+@Configuration
+public class SaaLLMConfig
+{
+    // 模型名称常量定义
+    private final String DEEPSEEK_MODEL = "deepseek-v3";
+    private final String QWEN_PLUS_MODEL = "qwen-plus";
+    private final String QWEN_MAX_MODEL = "qwen-max";
+
+    // 各路由权重，权重越大同等代价下越容易被选中；置 0 以下无效
+    @Value("${router.weights.deepseek:1.0}")
+    private double deepseekWeight;
+    @Value("${router.weights.qwen-plus:1.0}")
+    private double qwenPlusWeight;
+    @Value("${router.weights.qwen-max:0.5}")
+    private double qwenMaxWeight;
+    @Value("${router.weights.ollama:0.5}")
+    private double ollamaWeight;
+    // 延迟/错误率的衰减时间常数
+    @Value("${router.decay-millis:10000}")
+    private long decayMillis;
+    // 无样本时假定的首 token 延迟
+    @Value("${router.initial-latency-millis:1000}")
+    private long initialLatencyMillis;
+    // 错误率惩罚系数，错误率 10% 时代价放大 1 + 10 * 0.1 = 2 倍
+    @Value("${router.error-penalty:10}")
+    private double errorPenalty;
+
+    // 熔断：主模型和备用模型的 bean 名称，备用默认是按批量优先级准入的本地 Ollama
+    @Value("${chat.breaker.primary:qwenPlus}")
+    private String breakerPrimary;
+    @Value("${chat.breaker.fallback:batchOllama}")
+    private String breakerFallback;
+    // 最近 window-size 次调用里，样本不少于 min-calls 且失败率或慢调用率达到阈值时熔断
+    @Value("${chat.breaker.window-size:50}")
+    private int breakerWindowSize;
+    @Value("${chat.breaker.min-calls:10}")
+    private int breakerMinCalls;
+    @Value("${chat.breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRate;
+    @Value("${chat.breaker.slow-rate-threshold:0.8}")
+    private double breakerSlowRate;
+    // 同步整体耗时 / 流式首 token 超过该值记为慢调用
+    @Value("${chat.breaker.slow-call-millis:5000}")
+    private long breakerSlowCallMillis;
+    // 流式首 token 等待上限，超时改走备用模型
+    @Value("${chat.breaker.first-token-timeout-millis:10000}")
+    private long breakerFirstTokenTimeoutMillis;
+    // 熔断后多久开始后台探测，探测成功后半开放行的请求数
+    @Value("${chat.breaker.open-millis:30000}")
+    private long breakerOpenMillis;
+    @Value("${chat.breaker.half-open-calls:5}")
+    private int breakerHalfOpenCalls;
+
+    @Bean
+    public DashScopeApi dashScopeApi()
+    {
+        return DashScopeApi.builder()
+                    .apiKey(System.getenv("aliQwen_api"))
+                .build();
+    }
+
+    @Bean(name = "deepseek")
+    public ChatModel deepSeek(DashScopeApi dashScopeApi)
+    {
+        return DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build())
+                .build();
+    }
+
+    @Bean(name = "qwenPlus")
+    public ChatModel qwenPlus(DashScopeApi dashScopeApi)
+    {
+        return DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder().withModel(QWEN_PLUS_MODEL).build())
+                .build();
+    }
+
+    @Bean(name = "qwenMax")
+    public ChatModel qwenMax(DashScopeApi dashScopeApi)
+    {
+        return DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder().withModel(QWEN_MAX_MODEL).build())
+                .build();
+    }
+
+    @Bean(name = "router")
+    public RoutingChatModel router(@Qualifier("deepseek") ChatModel deepseek,
+                                   @Qualifier("qwenPlus") ChatModel qwenPlus,
+                                   @Qualifier("qwenMax") ChatModel qwenMax,
+                                   @Qualifier("admittedOllama") ChatModel admittedOllama,
+                                   MeterRegistry meterRegistry)
+    {
+        RoutingChatModel router = new RoutingChatModel(List.of(
+                new RoutingChatModel.Route(DEEPSEEK_MODEL, deepseek, deepseekWeight, decayMillis, initialLatencyMillis),
+                new RoutingChatModel.Route(QWEN_PLUS_MODEL, qwenPlus, qwenPlusWeight, decayMillis, initialLatencyMillis),
+                new RoutingChatModel.Route(QWEN_MAX_MODEL, qwenMax, qwenMaxWeight, decayMillis, initialLatencyMillis),
+                new RoutingChatModel.Route("ollama", admittedOllama, ollamaWeight, decayMillis, initialLatencyMillis)
+        ), errorPenalty);
+
+        // 路由实时状态：/actuator/metrics/router.route.latency?tag=route:qwen-plus
+        for (RoutingChatModel.Route route : router.getRoutes())
+        {
+            Gauge.builder("router.route.latency", route, RoutingChatModel.Route::latencyMillis)
+                    .tag("route", route.getName()).baseUnit("milliseconds").register(meterRegistry);
+            Gauge.builder("router.route.error.rate", route, RoutingChatModel.Route::errorRate)
+                    .tag("route", route.getName()).register(meterRegistry);
+            Gauge.builder("router.route.inflight", route, RoutingChatModel.Route::getInflight)
+                    .tag("route", route.getName()).register(meterRegistry);
+            Gauge.builder("router.route.requests", route, RoutingChatModel.Route::getRequests)
+                    .tag("route", route.getName()).register(meterRegistry);
+        }
+        return router;
+    }
+
+    /**
+     * 熔断 + 降级：主模型退化时直接走备用模型，不再等待超时
+     */
+    @Bean(name = "resilient")
+    public ResilientChatModel resilient(BeanFactory beanFactory, MeterRegistry meterRegistry)
+    {
+        ResilientChatModel resilient = ResilientChatModel.builder(
+                        beanFactory.getBean(breakerPrimary, ChatModel.class),
+                        beanFactory.getBean(breakerFallback, ChatModel.class))
+                    .windowSize(breakerWindowSize)
+                    .minCalls(breakerMinCalls)
+                    .failureRateThreshold(breakerFailureRate)
+                    .slowRateThreshold(breakerSlowRate)
+                    .slowCallThreshold(Duration.ofMillis(breakerSlowCallMillis))
+                    .firstTokenTimeout(Duration.ofMillis(breakerFirstTokenTimeoutMillis))
+                    .openDuration(Duration.ofMillis(breakerOpenMillis))
+                    .halfOpenCalls(breakerHalfOpenCalls)
+                .build();
+
+        // 0 CLOSED，1 HALF_OPEN，2 OPEN
+        Gauge.builder("chat.breaker.state", resilient, model -> model.getState().ordinal())
+                .tag("primary", breakerPrimary).tag("fallback", breakerFallback).register(meterRegistry);
+        Gauge.builder("chat.breaker.failure.rate", resilient, ResilientChatModel::failureRate)
+                .tag("primary", breakerPrimary).register(meterRegistry);
+        Gauge.builder("chat.breaker.slow.rate", resilient, ResilientChatModel::slowCallRate)
+                .tag("primary", breakerPrimary).register(meterRegistry);
+        FunctionCounter.builder("chat.breaker.fallback.calls", resilient, ResilientChatModel::getFallbackCalls)
+                .tag("fallback", breakerFallback).register(meterRegistry);
+        FunctionCounter.builder("chat.breaker.transitions", resilient, ResilientChatModel::getTransitions)
+                .tag("primary", breakerPrimary).register(meterRegistry);
+        return resilient;
+    }
+}
@@ -0,0 +1,59 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.model.PromptClassifier;
+import com.redmoon2333.model.TieredChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 按难度分级：本地 Ollama / qwen-plus / deepseek
+ */
+@Configuration
+public class TieredRoutingConfig
+{
+    // 各级使用的模型 bean 名称
+    @Value("${tier.local-model:admittedOllama}")
+    private String localModel;
+    @Value("${tier.standard-model:qwenPlus}")
+    private String standardModel;
+    @Value("${tier.advanced-model:deepseek}")
+    private String advancedModel;
+    // 估算 token 数不超过该值才考虑本地模型
+    @Value("${tier.local-max-tokens:64}")
+    private int localMaxTokens;
+    // 复杂度打分或估算 token 数达到该值直接走 advanced
+    @Value("${tier.advanced-min-score:3}")
+    private int advancedMinScore;
+    @Value("${tier.advanced-min-tokens:4000}")
+    private int advancedMinTokens;
+    // 灰区使用的本地小分类模型，例如 qwen3:0.6b；为空不启用
+    @Value("${tier.classifier.model:}")
+    private String classifierModel;
+    @Value("${tier.classifier.timeout-millis:300}")
+    private long classifierTimeoutMillis;
+
+    @Bean(destroyMethod = "close")
+    public PromptClassifier promptClassifier(@Qualifier("batchOllama") ChatModel batchOllama)
+    {
+        // 分类请求按批量优先级排队，本地模型繁忙时分类超时，按 STANDARD 处理
+        return new PromptClassifier(localMaxTokens, advancedMinScore, advancedMinTokens,
+                batchOllama, classifierModel, Duration.ofMillis(classifierTimeoutMillis));
+    }
+
+    @Bean(name = "tiered")
+    public TieredChatModel tiered(PromptClassifier promptClassifier, BeanFactory beanFactory, MeterRegistry meterRegistry)
+    {
+        return new TieredChatModel(promptClassifier,
+                beanFactory.getBean(localModel, ChatModel.class),
+                beanFactory.getBean(standardModel, ChatModel.class),
+                beanFactory.getBean(advancedModel, ChatModel.class),
+                meterRegistry);
+    }
+}
@@ -11,7 +11,7 @@ import reactor.core.publisher.Flux;
 @RestController
 public class OllamaController
 {
-    @Resource(name = "ollamaChatModel")
+    @Resource(name = "admittedOllama")
     private ChatModel chatModel;
 
     @GetMapping("/ollama/chat")
@@ -0,0 +1,43 @@
+package com.redmoon2333.controller;
+
+import com.redmoon2333.model.ResilientChatModel;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+@RestController
+public class ResilientController
+{
+    @Resource(name = "resilient")
+    private ResilientChatModel resilient;
+
+    @GetMapping("/resilient/chat")
+    public String chat(@RequestParam(name = "msg") String msg)
+    {
+        return resilient.call(msg);
+    }
+
+    @GetMapping("/resilient/streamchat")
+    public Flux<String> streamchat(@RequestParam(name = "msg", defaultValue = "你是谁") String msg)
+    {
+        return resilient.stream(msg);
+    }
+
+    /**
+     * 熔断器当前状态和窗口内的失败率、慢调用率
+     */
+    @GetMapping("/resilient/state")
+    public Map<String, Object> state()
+    {
+        return Map.of(
+                "state", resilient.getState(),
+                "failureRate", resilient.failureRate(),
+                "slowCallRate", resilient.slowCallRate(),
+                "fallbackCalls", resilient.getFallbackCalls(),
+                "transitions", resilient.getTransitions());
+    }
+}
@@ -0,0 +1,38 @@
+package com.redmoon2333.controller;
+
+import com.redmoon2333.model.RoutingChatModel;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+@RestController
+public class RouterController
+{
+    @Resource(name = "router")
+    private RoutingChatModel router;
+
+    @GetMapping("/router/chat")
+    public String chat(@RequestParam(name = "msg") String msg)
+    {
+        return router.call(msg);
+    }
+
+    @GetMapping("/router/streamchat")
+    public Flux<String> streamchat(@RequestParam(name = "msg", defaultValue = "你是谁") String msg)
+    {
+        return router.stream(msg);
+    }
+
+    /**
+     * 各后端当前的延迟、错误率、在途数和代价
+     */
+    @GetMapping("/router/stats")
+    public List<RoutingChatModel.RouteStats> stats()
+    {
+        return router.stats();
+    }
+}
@@ -0,0 +1,40 @@
+package com.redmoon2333.controller;
+
+import com.redmoon2333.model.PromptClassifier;
+import com.redmoon2333.model.TieredChatModel;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+public class TieredController
+{
+    @Resource(name = "tiered")
+    private TieredChatModel tiered;
+    @Resource
+    private PromptClassifier promptClassifier;
+
+    @GetMapping("/tiered/chat")
+    public String chat(@RequestParam(name = "msg") String msg)
+    {
+        return tiered.call(msg);
+    }
+
+    @GetMapping("/tiered/streamchat")
+    public Flux<String> streamchat(@RequestParam(name = "msg", defaultValue = "你是谁") String msg)
+    {
+        return tiered.stream(msg);
+    }
+
+    /**
+     * 只看分级结果，不调用模型，便于调阈值
+     */
+    @GetMapping("/tiered/classify")
+    public PromptClassifier.Classification classify(@RequestParam(name = "msg") String msg)
+    {
+        return promptClassifier.classify(new Prompt(msg));
+    }
+}
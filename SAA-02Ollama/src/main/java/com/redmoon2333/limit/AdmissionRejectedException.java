@@ -0,0 +1,20 @@
+package com.redmoon2333.limit;
+
+/**
+ * 本地模型准入拒绝：队列已满、预计等待超过期限或排队超时，请求没有发到 Ollama
+ */
+public class AdmissionRejectedException extends RuntimeException
+{
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String reason, long retryAfterSeconds)
+    {
+        super("Ollama 繁忙: " + reason);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds()
+    {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,348 @@
+package com.redmoon2333.limit;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模型的优先级准入调度
+ * <ul>
+ *     <li>最多 maxConcurrent 个生成同时进行；BATCH 最多占 batchMaxConcurrent 个，剩下的槽位留给 INTERACTIVE</li>
+ *     <li>INTERACTIVE 严格优先：有交互请求排队时不再放行批量请求</li>
+ *     <li>同一优先级内按调用方轮转出队，单个调用方最多排 maxQueuedPerCaller 个，不会挤占其他调用方</li>
+ *     <li>每个优先级有排队期限，入队时按平均生成耗时估算等待，超过期限直接拒绝；排队超时同样拒绝，都带 Retry-After</li>
+ * </ul>
+ * 所有状态在 this 上同步，放行时在锁外完成 future，避免下游在锁内开始生成。
+ */
+public class AdmissionScheduler implements DisposableBean
+{
+    public enum Priority
+    {
+        INTERACTIVE, BATCH
+    }
+
+    private static final double SERVICE_TIME_ALPHA = 0.2;
+
+    private final int maxConcurrent;
+    private final int batchMaxConcurrent;
+    private final int maxQueuedPerClass;
+    private final int maxQueuedPerCaller;
+    private final Map<Priority, Duration> maxWait = new EnumMap<>(Priority.class);
+    private final Map<Priority, FairQueue> queues = new EnumMap<>(Priority.class);
+    private final ScheduledExecutorService timer;
+
+    private int running;
+    private int runningBatch;
+    // 单次生成的平均耗时（EWMA），用于估算排队时间和 Retry-After
+    private double serviceMillis;
+    private long rejected;
+
+    public AdmissionScheduler(int maxConcurrent, int batchMaxConcurrent, int maxQueuedPerClass, int maxQueuedPerCaller,
+                              Duration interactiveMaxWait, Duration batchMaxWait, Duration initialServiceTime)
+    {
+        this.maxConcurrent = maxConcurrent;
+        this.batchMaxConcurrent = Math.min(batchMaxConcurrent, maxConcurrent);
+        this.maxQueuedPerClass = maxQueuedPerClass;
+        this.maxQueuedPerCaller = maxQueuedPerCaller;
+        this.maxWait.put(Priority.INTERACTIVE, interactiveMaxWait);
+        this.maxWait.put(Priority.BATCH, batchMaxWait);
+        for (Priority priority : Priority.values())
+        {
+            queues.put(priority, new FairQueue());
+        }
+        this.serviceMillis = initialServiceTime.toMillis();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-admission-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 申请一个生成槽位，能立即拒绝的在这里直接抛出；返回的 ticket 放行后必须 {@link #release(Ticket)}
+     */
+    public Ticket enqueue(String caller, Priority priority)
+    {
+        Ticket ticket = new Ticket(caller, priority);
+        synchronized (this)
+        {
+            FairQueue queue = queues.get(priority);
+            boolean nothingAhead = queue.size() == 0
+                    && (priority == Priority.INTERACTIVE || queues.get(Priority.INTERACTIVE).size() == 0);
+            if (nothingAhead && canRun(priority))
+            {
+                start(ticket);
+                ticket.granted.complete(ticket);
+                return ticket;
+            }
+            if (queue.size() >= maxQueuedPerClass)
+            {
+                throw reject(priority + " 队列已满", queue.size());
+            }
+            if (queue.size(caller) >= maxQueuedPerCaller)
+            {
+                throw reject("调用方 " + caller + " 排队请求过多", queue.size());
+            }
+            long estimatedWaitMillis = estimateWaitMillis(priority);
+            if (estimatedWaitMillis > maxWait.get(priority).toMillis())
+            {
+                throw reject("预计等待 " + estimatedWaitMillis + "ms 超过期限", queue.size());
+            }
+            queue.add(ticket);
+            ticket.expiry = timer.schedule(() -> expire(ticket), maxWait.get(priority).toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return ticket;
+    }
+
+    /**
+     * 生成结束、失败或客户端取消时调用，未放行的 ticket 直接出队；重复调用无副作用
+     */
+    public void release(Ticket ticket)
+    {
+        List<Ticket> granted;
+        synchronized (this)
+        {
+            if (ticket.state == State.RUNNING)
+            {
+                running--;
+                if (ticket.priority == Priority.BATCH)
+                {
+                    runningBatch--;
+                }
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.startNanos);
+                serviceMillis += SERVICE_TIME_ALPHA * (millis - serviceMillis);
+            }
+            else if (ticket.state == State.QUEUED)
+            {
+                queues.get(ticket.priority).remove(ticket);
+                ticket.cancelExpiry();
+            }
+            ticket.state = State.DONE;
+            granted = dispatch();
+        }
+        complete(granted);
+    }
+
+    public synchronized Stats stats()
+    {
+        return new Stats(running, runningBatch, queues.get(Priority.INTERACTIVE).size(),
+                queues.get(Priority.BATCH).size(), Math.round(serviceMillis), rejected);
+    }
+
+    @Override
+    public void destroy()
+    {
+        timer.shutdownNow();
+    }
+
+    private void expire(Ticket ticket)
+    {
+        AdmissionRejectedException rejection;
+        synchronized (this)
+        {
+            if (ticket.state != State.QUEUED)
+            {
+                return;
+            }
+            FairQueue queue = queues.get(ticket.priority);
+            queue.remove(ticket);
+            ticket.state = State.DONE;
+            rejection = reject("排队超过 " + maxWait.get(ticket.priority).toMillis() + "ms", queue.size());
+        }
+        ticket.granted.completeExceptionally(rejection);
+    }
+
+    private boolean canRun(Priority priority)
+    {
+        return running < maxConcurrent && (priority == Priority.INTERACTIVE || runningBatch < batchMaxConcurrent);
+    }
+
+    private void start(Ticket ticket)
+    {
+        ticket.state = State.RUNNING;
+        ticket.startNanos = System.nanoTime();
+        running++;
+        if (ticket.priority == Priority.BATCH)
+        {
+            runningBatch++;
+        }
+    }
+
+    private List<Ticket> dispatch()
+    {
+        List<Ticket> granted = new ArrayList<>();
+        FairQueue interactive = queues.get(Priority.INTERACTIVE);
+        FairQueue batch = queues.get(Priority.BATCH);
+        while (true)
+        {
+            Ticket next;
+            if (interactive.size() > 0)
+            {
+                if (!canRun(Priority.INTERACTIVE))
+                {
+                    break;
+                }
+                next = interactive.poll();
+            }
+            else if (batch.size() > 0 && canRun(Priority.BATCH))
+            {
+                next = batch.poll();
+            }
+            else
+            {
+                break;
+            }
+            next.cancelExpiry();
+            start(next);
+            granted.add(next);
+        }
+        return granted;
+    }
+
+    private static void complete(List<Ticket> granted)
+    {
+        for (Ticket ticket : granted)
+        {
+            ticket.granted.complete(ticket);
+        }
+    }
+
+    /**
+     * 排在前面的请求数 / 可用槽位数 * 平均耗时；批量请求还要排在所有交互请求之后
+     */
+    private long estimateWaitMillis(Priority priority)
+    {
+        int ahead = queues.get(Priority.INTERACTIVE).size() + 1;
+        int slots = maxConcurrent;
+        if (priority == Priority.BATCH)
+        {
+            ahead += queues.get(Priority.BATCH).size();
+            slots = batchMaxConcurrent;
+        }
+        return (long) Math.ceil((double) ahead / Math.max(1, slots)) * Math.round(serviceMillis);
+    }
+
+    private synchronized AdmissionRejectedException reject(String reason, int queued)
+    {
+        rejected++;
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil((queued + 1) * serviceMillis / Math.max(1, maxConcurrent) / 1000));
+        return new AdmissionRejectedException(reason, retryAfterSeconds);
+    }
+
+    private enum State
+    {
+        QUEUED, RUNNING, DONE
+    }
+
+    public static class Ticket
+    {
+        private final String caller;
+        private final Priority priority;
+        private final CompletableFuture<Ticket> granted = new CompletableFuture<>();
+        private State state = State.QUEUED;
+        private long startNanos;
+        private ScheduledFuture<?> expiry;
+
+        private Ticket(String caller, Priority priority)
+        {
+            this.caller = caller;
+            this.priority = priority;
+        }
+
+        /**
+         * 放行时完成；排队超时以 {@link AdmissionRejectedException} 异常完成
+         */
+        public CompletableFuture<Ticket> granted()
+        {
+            return granted;
+        }
+
+        private void cancelExpiry()
+        {
+            if (expiry != null)
+            {
+                expiry.cancel(false);
+            }
+        }
+    }
+
+    public record Stats(int running, int runningBatch, int queuedInteractive, int queuedBatch,
+                        long serviceMillis, long rejected)
+    {
+    }
+
+    /**
+     * 按调用方分桶、桶之间轮转的队列
+     */
+    private static class FairQueue
+    {
+        private final Map<String, ArrayDeque<Ticket>> byCaller = new HashMap<>();
+        private final ArrayDeque<String> rotation = new ArrayDeque<>();
+        private int size;
+
+        void add(Ticket ticket)
+        {
+            ArrayDeque<Ticket> tickets = byCaller.computeIfAbsent(ticket.caller, caller -> new ArrayDeque<>());
+            if (tickets.isEmpty())
+            {
+                rotation.addLast(ticket.caller);
+            }
+            tickets.addLast(ticket);
+            size++;
+        }
+
+        Ticket poll()
+        {
+            String caller = rotation.pollFirst();
+            ArrayDeque<Ticket> tickets = byCaller.get(caller);
+            Ticket ticket = tickets.pollFirst();
+            if (tickets.isEmpty())
+            {
+                byCaller.remove(caller);
+            }
+            else
+            {
+                rotation.addLast(caller);
+            }
+            size--;
+            return ticket;
+        }
+
+        void remove(Ticket ticket)
+        {
+            ArrayDeque<Ticket> tickets = byCaller.get(ticket.caller);
+            if (tickets == null || !tickets.remove(ticket))
+            {
+                return;
+            }
+            size--;
+            if (tickets.isEmpty())
+            {
+                byCaller.remove(ticket.caller);
+                rotation.remove(ticket.caller);
+            }
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        int size(String caller)
+        {
+            ArrayDeque<Ticket> tickets = byCaller.get(caller);
+            return tickets == null ? 0 : tickets.size();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.redmoon2333.model;
+
+import com.redmoon2333.limit.AdmissionRejectedException;
+import com.redmoon2333.limit.AdmissionScheduler;
+import com.redmoon2333.limit.AdmissionScheduler.Priority;
+import com.redmoon2333.limit.AdmissionScheduler.Ticket;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 在本地模型前做准入调度，见 {@link AdmissionScheduler}
+ * <p>
+ * 优先级取请求头 X-Priority（interactive / batch，默认 interactive），调用方取 X-Caller-Id，没有则用客户端地址；
+ * 构造时指定了固定优先级的实例（分类器、熔断降级等内部流量）忽略请求头。
+ * 请求头在调用线程上读取，流式请求在订阅时才入队，取消或结束时归还槽位。
+ */
+public class AdmissionControlledChatModel implements ChatModel
+{
+    public static final String PRIORITY_HEADER = "X-Priority";
+    public static final String CALLER_HEADER = "X-Caller-Id";
+
+    private final ChatModel delegate;
+    private final AdmissionScheduler scheduler;
+    // 为 null 时按请求头决定
+    private final Priority fixedPriority;
+
+    public AdmissionControlledChatModel(ChatModel delegate, AdmissionScheduler scheduler)
+    {
+        this(delegate, scheduler, null);
+    }
+
+    public AdmissionControlledChatModel(ChatModel delegate, AdmissionScheduler scheduler, Priority fixedPriority)
+    {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.fixedPriority = fixedPriority;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        Ticket ticket = scheduler.enqueue(currentCaller(), currentPriority());
+        try {
+            ticket.granted().get();
+            return delegate.call(prompt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException("等待被中断", 1);
+        } catch (ExecutionException e) {
+            throw (AdmissionRejectedException) e.getCause();
+        } finally {
+            scheduler.release(ticket);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        String caller = currentCaller();
+        Priority priority = currentPriority();
+        return Flux.defer(() -> {
+            Ticket ticket = scheduler.enqueue(caller, priority);
+            return Mono.fromFuture(ticket.granted(), true)
+                    .flatMapMany(granted -> delegate.stream(prompt))
+                    .doFinally(signal -> scheduler.release(ticket));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return delegate.getDefaultOptions();
+    }
+
+    private Priority currentPriority()
+    {
+        if (fixedPriority != null)
+        {
+            return fixedPriority;
+        }
+        HttpServletRequest request = currentRequest();
+        String value = request == null ? null : request.getHeader(PRIORITY_HEADER);
+        return "batch".equalsIgnoreCase(value) ? Priority.BATCH : Priority.INTERACTIVE;
+    }
+
+    private static String currentCaller()
+    {
+        HttpServletRequest request = currentRequest();
+        if (request == null)
+        {
+            return "internal";
+        }
+        String caller = request.getHeader(CALLER_HEADER);
+        return caller == null || caller.isBlank() ? request.getRemoteAddr() : caller;
+    }
+
+    private static HttpServletRequest currentRequest()
+    {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest()
+                : null;
+    }
+}
@@ -0,0 +1,246 @@
+package com.redmoon2333.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 本地请求分级：估算 token 数 + 启发式复杂度打分，必要时再问一次本地小模型
+ * <ul>
+ *     <li>LOCAL：短且没有复杂特征，例如问候、简单算术，交给本地 Ollama</li>
+ *     <li>STANDARD：一般请求，走 qwen-plus</li>
+ *     <li>ADVANCED：代码、推理、长文分析等，走 deepseek / qwen-max</li>
+ * </ul>
+ * 复杂度打分：代码块 +2，每个复杂关键词 +1（最多 3），多行/多个问题 +1，多轮历史较长 +1。
+ * 短请求但有少量复杂特征时属于灰区：配置了 classifierModel 时用本地小模型做一次二分类，超时按 STANDARD 处理，否则直接走 STANDARD。
+ * <p>
+ * 超时只是放弃等待，Ollama 的 HTTP 调用不会被中断，会一直占着线程直到返回。因此分类调用最多同时跑
+ * CLASSIFIER_CONCURRENCY 个，许可在调用真正结束时才归还；许可用完说明本地模型已经跟不上，直接跳过分类走 STANDARD，
+ * 不排队。
+ */
+public class PromptClassifier
+{
+    private static final Logger log = LoggerFactory.getLogger(PromptClassifier.class);
+
+    public enum Tier
+    {
+        LOCAL, STANDARD, ADVANCED
+    }
+
+    public record Classification(Tier tier, int estimatedTokens, int score, String reason)
+    {
+    }
+
+    private static final Pattern CODE = Pattern.compile("```|\\b(class|def|function|public|import|select|return)\\b|[{};]\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+    private static final Pattern ARITHMETIC = Pattern.compile("^[\\d\\s+\\-*/×÷=().加减乘除以等于是几多少？?]+$");
+    private static final List<String> HARD_KEYWORDS = List.of(
+            "分析", "证明", "推导", "设计", "架构", "实现", "代码", "优化", "对比", "比较", "原理", "为什么", "详细", "步骤",
+            "算法", "论文", "方案", "评估", "重构", "排查",
+            "analy", "prove", "design", "implement", "compare", "explain", "refactor", "algorithm", "debug");
+
+    private static final int CLASSIFIER_CONCURRENCY = 2;
+
+    private final int localMaxTokens;
+    private final int advancedMinScore;
+    private final int advancedMinTokens;
+    private final ChatModel ollamaChatModel;
+    private final String classifierModel;
+    private final Duration classifierTimeout;
+    private final ExecutorService classifierExecutor;
+    private final Semaphore classifierPermits = new Semaphore(CLASSIFIER_CONCURRENCY);
+
+    /**
+     * @param localMaxTokens    估算 token 数不超过该值才考虑本地模型
+     * @param advancedMinScore  复杂度打分达到该值走 ADVANCED
+     * @param advancedMinTokens 估算 token 数达到该值走 ADVANCED
+     * @param classifierModel   灰区使用的本地分类模型，为空则不启用，灰区一律走 STANDARD
+     */
+    public PromptClassifier(int localMaxTokens, int advancedMinScore, int advancedMinTokens,
+                            ChatModel ollamaChatModel, String classifierModel, Duration classifierTimeout)
+    {
+        this.localMaxTokens = localMaxTokens;
+        this.advancedMinScore = advancedMinScore;
+        this.advancedMinTokens = advancedMinTokens;
+        this.ollamaChatModel = ollamaChatModel;
+        this.classifierModel = classifierModel == null || classifierModel.isBlank() ? null : classifierModel;
+        this.classifierTimeout = classifierTimeout;
+        this.classifierExecutor = this.classifierModel == null ? null : Executors.newFixedThreadPool(CLASSIFIER_CONCURRENCY, runnable -> {
+            Thread thread = new Thread(runnable, "prompt-classifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Classification classify(Prompt prompt)
+    {
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options
+                && (!options.getToolCallbacks().isEmpty() || !options.getToolNames().isEmpty()))
+        {
+            return new Classification(Tier.STANDARD, estimateTokens(prompt), 0, "tools");
+        }
+
+        int tokens = estimateTokens(prompt);
+        String question = prompt.getUserMessage().getText();
+        question = question == null ? "" : question.trim();
+
+        int score = 0;
+        if (CODE.matcher(question).find())
+        {
+            score += 2;
+        }
+        String lower = question.toLowerCase(Locale.ROOT);
+        int keywords = 0;
+        for (String keyword : HARD_KEYWORDS)
+        {
+            if (lower.contains(keyword) && ++keywords == 3)
+            {
+                break;
+            }
+        }
+        score += keywords;
+        if (question.lines().count() > 3 || countQuestions(question) > 1)
+        {
+            score++;
+        }
+        if (prompt.getInstructions().size() > 6)
+        {
+            score++;
+        }
+
+        if (tokens >= advancedMinTokens || score >= advancedMinScore)
+        {
+            return new Classification(Tier.ADVANCED, tokens, score, tokens >= advancedMinTokens ? "long" : "complex");
+        }
+        if (tokens > localMaxTokens)
+        {
+            return new Classification(Tier.STANDARD, tokens, score, "size");
+        }
+        if (score == 0 || ARITHMETIC.matcher(question).matches())
+        {
+            return new Classification(Tier.LOCAL, tokens, score, "simple");
+        }
+        if (classifierModel == null)
+        {
+            return new Classification(Tier.STANDARD, tokens, score, "heuristic");
+        }
+        if (!classifierPermits.tryAcquire())
+        {
+            log.debug("本地分类模型并发已满，跳过分类按 STANDARD 处理");
+            return new Classification(Tier.STANDARD, tokens, score, "classifier-busy");
+        }
+        return new Classification(askClassifier(question), tokens, score, "classifier");
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符按 1 个 token，其余按 4 个字符 1 个 token
+     */
+    public static int estimateTokens(Prompt prompt)
+    {
+        int tokens = 0;
+        for (Message message : prompt.getInstructions())
+        {
+            if (message.getMessageType() == MessageType.TOOL)
+            {
+                continue;
+            }
+            tokens += estimateTokens(message.getText()) + 4;
+        }
+        return tokens;
+    }
+
+    public static int estimateTokens(String text)
+    {
+        if (text == null || text.isEmpty())
+        {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); )
+        {
+            int codePoint = text.codePointAt(i);
+            Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL)
+            {
+                cjk++;
+            }
+            else
+            {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    public void close()
+    {
+        if (classifierExecutor != null)
+        {
+            classifierExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 调用前已取得一个许可，由分类任务结束时归还
+     */
+    private Tier askClassifier(String question)
+    {
+        String instruction = "判断下面的问题是否简单（寒暄、常识、一句话能回答）。简单回答 A，否则回答 B，只输出一个字母。\n问题：" + question + " /no_think";
+        CompletableFuture<String> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ollamaChatModel.call(new Prompt(instruction,
+                            OllamaOptions.builder().model(classifierModel).numPredict(8).temperature(0.0).build()))
+                            .getResult().getOutput().getText();
+                } finally {
+                    classifierPermits.release();
+                }
+            }, classifierExecutor);
+        } catch (RejectedExecutionException e) {
+            classifierPermits.release();
+            return Tier.STANDARD;
+        }
+        try {
+            String answer = future.get(classifierTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            answer = answer == null ? "" : answer.replaceAll("(?s)<think>.*?</think>", "").trim().toUpperCase(Locale.ROOT);
+            return answer.startsWith("A") ? Tier.LOCAL : Tier.STANDARD;
+        } catch (Exception e) {
+            log.debug("本地分类模型未在 {}ms 内给出结果，按 STANDARD 处理: {}", classifierTimeout.toMillis(), e.toString());
+            return Tier.STANDARD;
+        }
+    }
+
+    private static int countQuestions(String text)
+    {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == '?' || c == '？')
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}
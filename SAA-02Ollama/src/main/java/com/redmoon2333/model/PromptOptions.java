@@ -0,0 +1,57 @@
+package com.redmoon2333.model;
+
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+
+/**
+ * 路由/降级/分级转发请求时共用的 options 处理
+ */
+final class PromptOptions
+{
+    private PromptOptions()
+    {
+    }
+
+    /**
+     * 去掉请求里的模型名，由接手的后端使用自己的默认模型
+     * <p>
+     * 复制原 options 后只清空 model，工具回调、工具名、toolContext 以及 DashScope/Ollama 专有参数都保留；
+     * 目标后端会把不同厂商的 options 按公共字段（含工具）拷到自己的类型上。
+     * 极少数没有 model setter 的实现退回到 DefaultToolCallingChatOptions，至少保留通用参数和工具。
+     */
+    static Prompt withoutModel(Prompt prompt)
+    {
+        ChatOptions options = prompt.getOptions();
+        if (options == null || options.getModel() == null)
+        {
+            return prompt;
+        }
+        ChatOptions copy = options.copy();
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(copy);
+        if (wrapper.isWritableProperty("model"))
+        {
+            wrapper.setPropertyValue("model", null);
+            return new Prompt(prompt.getInstructions(), copy);
+        }
+        ToolCallingChatOptions.Builder builder = DefaultToolCallingChatOptions.builder()
+                .temperature(options.getTemperature())
+                .topP(options.getTopP())
+                .topK(options.getTopK())
+                .maxTokens(options.getMaxTokens())
+                .frequencyPenalty(options.getFrequencyPenalty())
+                .presencePenalty(options.getPresencePenalty())
+                .stopSequences(options.getStopSequences());
+        if (options instanceof ToolCallingChatOptions tools)
+        {
+            builder.toolCallbacks(tools.getToolCallbacks())
+                    .toolNames(tools.getToolNames())
+                    .toolContext(tools.getToolContext())
+                    .internalToolExecutionEnabled(tools.getInternalToolExecutionEnabled());
+        }
+        return new Prompt(prompt.getInstructions(), builder.build());
+    }
+}
@@ -0,0 +1,417 @@
+package com.redmoon2333.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 熔断 + 降级：主模型（DashScope）变差时切到本地 Ollama 或配置的备用模型
+ * <ul>
+ *     <li>CLOSED：走主模型，最近 windowSize 次调用中失败率或慢调用率超过阈值（且样本不少于 minCalls）时熔断</li>
+ *     <li>OPEN：请求直接走备用模型，不再等主模型超时；后台每隔 openDuration 用一个极小的请求探测主模型</li>
+ *     <li>HALF_OPEN：探测成功后放行 halfOpenCalls 个真实请求，全部成功则恢复 CLOSED，任一失败重新 OPEN</li>
+ * </ul>
+ * CLOSED 状态下单次请求失败（流式为首 token 之前失败或超过 firstTokenTimeout）也会立即改走备用模型，已经输出过内容的流不再切换。
+ */
+public class ResilientChatModel implements ChatModel, DisposableBean
+{
+    private static final Logger log = LoggerFactory.getLogger(ResilientChatModel.class);
+
+    public enum State
+    {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final ChatModel primary;
+    private final ChatModel fallback;
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final double slowRateThreshold;
+    private final long slowCallNanos;
+    private final Duration firstTokenTimeout;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private State state = State.CLOSED;
+    private int halfOpenRemaining;
+    private int halfOpenSucceeded;
+
+    private final AtomicLong fallbackCalls = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final ScheduledExecutorService prober;
+
+    private ResilientChatModel(Builder builder)
+    {
+        this.primary = builder.primary;
+        this.fallback = builder.fallback;
+        this.windowSize = builder.windowSize;
+        this.minCalls = builder.minCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowRateThreshold = builder.slowRateThreshold;
+        this.slowCallNanos = builder.slowCallThreshold.toNanos();
+        this.firstTokenTimeout = builder.firstTokenTimeout;
+        this.openDuration = builder.openDuration;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.window = new byte[windowSize];
+        AtomicInteger index = new AtomicInteger();
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "circuit-breaker-probe-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder(ChatModel primary, ChatModel fallback)
+    {
+        return new Builder(primary, fallback);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        if (!tryPrimary())
+        {
+            return callFallback(prompt);
+        }
+        long start = System.nanoTime();
+        ChatResponse response;
+        try {
+            response = primary.call(prompt);
+        } catch (RuntimeException e) {
+            record(FAILURE);
+            log.warn("主模型调用失败，改走备用模型: {}", e.getMessage());
+            return callFallback(prompt);
+        }
+        record(System.nanoTime() - start > slowCallNanos ? SLOW : SUCCESS);
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return Flux.defer(() -> {
+            if (!tryPrimary())
+            {
+                return streamFallback(prompt);
+            }
+            long start = System.nanoTime();
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicBoolean recorded = new AtomicBoolean();
+            // 只限制首 token 的等待时间，之后的生成不设超时
+            return primary.stream(prompt)
+                    .timeout(Mono.delay(firstTokenTimeout), response -> Mono.never())
+                    .doOnNext(response -> {
+                        if (emitted.compareAndSet(false, true) && recorded.compareAndSet(false, true))
+                        {
+                            record(System.nanoTime() - start > slowCallNanos ? SLOW : SUCCESS);
+                        }
+                    })
+                    .onErrorResume(error -> {
+                        if (recorded.compareAndSet(false, true))
+                        {
+                            record(FAILURE);
+                        }
+                        if (emitted.get())
+                        {
+                            return Flux.error(error);
+                        }
+                        log.warn("主模型首 token 前失败，改走备用模型: {}", error.toString());
+                        return streamFallback(prompt);
+                    })
+                    .doOnCancel(() -> {
+                        // 首 token 前被客户端取消，归还半开放行名额，不计入统计
+                        if (recorded.compareAndSet(false, true))
+                        {
+                            releaseHalfOpen();
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return primary.getDefaultOptions();
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    public synchronized double failureRate()
+    {
+        return rate(FAILURE);
+    }
+
+    public synchronized double slowCallRate()
+    {
+        return rate(SLOW);
+    }
+
+    public long getFallbackCalls()
+    {
+        return fallbackCalls.get();
+    }
+
+    public long getTransitions()
+    {
+        return transitions.get();
+    }
+
+    @Override
+    public void destroy()
+    {
+        prober.shutdownNow();
+    }
+
+    private ChatResponse callFallback(Prompt prompt)
+    {
+        fallbackCalls.incrementAndGet();
+        return fallback.call(PromptOptions.withoutModel(prompt));
+    }
+
+    private Flux<ChatResponse> streamFallback(Prompt prompt)
+    {
+        fallbackCalls.incrementAndGet();
+        return fallback.stream(PromptOptions.withoutModel(prompt));
+    }
+
+    /**
+     * 当前请求能否走主模型；HALF_OPEN 时占用一个放行名额
+     */
+    private synchronized boolean tryPrimary()
+    {
+        switch (state)
+        {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenRemaining > 0)
+                {
+                    halfOpenRemaining--;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private synchronized void releaseHalfOpen()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            halfOpenRemaining++;
+        }
+    }
+
+    private synchronized void record(byte outcome)
+    {
+        if (state == State.HALF_OPEN)
+        {
+            if (outcome == SUCCESS)
+            {
+                if (++halfOpenSucceeded >= halfOpenCalls)
+                {
+                    transition(State.CLOSED);
+                }
+            }
+            else
+            {
+                transition(State.OPEN);
+            }
+            return;
+        }
+        if (state != State.CLOSED)
+        {
+            // OPEN 期间仍在进行的主模型请求，结果不再影响状态
+            return;
+        }
+
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % windowSize;
+        windowCount = Math.min(windowCount + 1, windowSize);
+        if (windowCount >= minCalls && (rate(FAILURE) >= failureRateThreshold || rate(SLOW) >= slowRateThreshold))
+        {
+            log.warn("熔断：失败率 {}，慢调用率 {}", rate(FAILURE), rate(SLOW));
+            transition(State.OPEN);
+        }
+    }
+
+    private double rate(byte outcome)
+    {
+        if (windowCount == 0)
+        {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < windowCount; i++)
+        {
+            if (window[i] == outcome)
+            {
+                count++;
+            }
+        }
+        return (double) count / windowCount;
+    }
+
+    private void transition(State target)
+    {
+        log.info("熔断器状态 {} -> {}", state, target);
+        transitions.incrementAndGet();
+        state = target;
+        windowIndex = 0;
+        windowCount = 0;
+        if (target == State.OPEN)
+        {
+            scheduleProbe();
+        }
+        else if (target == State.HALF_OPEN)
+        {
+            halfOpenRemaining = halfOpenCalls;
+            halfOpenSucceeded = 0;
+        }
+    }
+
+    private void scheduleProbe()
+    {
+        if (!probing.compareAndSet(false, true))
+        {
+            return;
+        }
+        prober.schedule(this::probe, openDuration.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 后台探测：1 个 token 的最小请求，成功且不慢则进入 HALF_OPEN
+     */
+    private void probe()
+    {
+        boolean healthy;
+        long start = System.nanoTime();
+        try {
+            primary.call(new Prompt(new UserMessage("ping"), ChatOptions.builder().maxTokens(1).build()));
+            healthy = System.nanoTime() - start <= slowCallNanos;
+        } catch (RuntimeException e) {
+            healthy = false;
+            log.debug("主模型探测失败: {}", e.getMessage());
+        }
+        probing.set(false);
+        synchronized (this)
+        {
+            if (state != State.OPEN)
+            {
+                return;
+            }
+            if (healthy)
+            {
+                transition(State.HALF_OPEN);
+            }
+            else
+            {
+                scheduleProbe();
+            }
+        }
+    }
+
+    public static class Builder
+    {
+        private final ChatModel primary;
+        private final ChatModel fallback;
+        private int windowSize = 50;
+        private int minCalls = 10;
+        private double failureRateThreshold = 0.5;
+        private double slowRateThreshold = 0.8;
+        private Duration slowCallThreshold = Duration.ofSeconds(5);
+        private Duration firstTokenTimeout = Duration.ofSeconds(10);
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenCalls = 5;
+
+        private Builder(ChatModel primary, ChatModel fallback)
+        {
+            this.primary = primary;
+            this.fallback = fallback;
+        }
+
+        public Builder windowSize(int windowSize)
+        {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public Builder minCalls(int minCalls)
+        {
+            this.minCalls = minCalls;
+            return this;
+        }
+
+        public Builder failureRateThreshold(double failureRateThreshold)
+        {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder slowRateThreshold(double slowRateThreshold)
+        {
+            this.slowRateThreshold = slowRateThreshold;
+            return this;
+        }
+
+        /**
+         * 同步调用的整体耗时、流式调用的首 token 延迟超过该值记为慢调用
+         */
+        public Builder slowCallThreshold(Duration slowCallThreshold)
+        {
+            this.slowCallThreshold = slowCallThreshold;
+            return this;
+        }
+
+        public Builder firstTokenTimeout(Duration firstTokenTimeout)
+        {
+            this.firstTokenTimeout = firstTokenTimeout;
+            return this;
+        }
+
+        public Builder openDuration(Duration openDuration)
+        {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public Builder halfOpenCalls(int halfOpenCalls)
+        {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public ResilientChatModel build()
+        {
+            return new ResilientChatModel(this);
+        }
+    }
+}
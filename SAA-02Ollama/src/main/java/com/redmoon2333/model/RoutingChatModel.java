@@ -0,0 +1,295 @@
+package com.redmoon2333.model;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按实时延迟自适应路由的 ChatModel
+ * <p>
+ * 每个后端（路由）维护 EWMA 延迟、EWMA 错误率和在途请求数，每次请求按权重随机抽两个候选（power of two choices），
+ * 取代价低的一个：
+ * <pre>
+ *     cost = 延迟 * (在途数 + 1) * (1 + errorPenalty * 错误率) / 权重
+ * </pre>
+ * <ul>
+ *     <li>延迟：流式取首 token 延迟，同步取整体耗时；采用 peak-EWMA，变慢立即生效，变快逐步生效。
+ *         失败的调用不按实际耗时记录（快速失败的后端否则会显得最快，把流量全部吸过去），而是记为当前延迟的
+ *         FAILURE_LATENCY_FACTOR 倍，上限为初始延迟的 MAX_PENALTY_FACTOR 倍</li>
+ *     <li>错误率：按请求计的 EWMA，每次调用权重 ERROR_ALPHA，与 QPS 无关</li>
+ *     <li>延迟和错误率读取时按距上次采样的时间衰减，退化的后端不被选中一段时间后代价下降，会重新分到少量流量来探测是否恢复</li>
+ *     <li>路由时去掉请求里的模型名，由各后端使用自己的默认模型</li>
+ * </ul>
+ */
+public class RoutingChatModel implements ChatModel
+{
+    private final List<Route> routes;
+    private final double errorPenalty;
+
+    public RoutingChatModel(List<Route> routes, double errorPenalty)
+    {
+        if (routes.isEmpty())
+        {
+            throw new IllegalArgumentException("至少需要一个路由");
+        }
+        this.routes = List.copyOf(routes);
+        this.errorPenalty = errorPenalty;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        Route route = choose();
+        long start = route.begin();
+        try {
+            ChatResponse response = route.model.call(PromptOptions.withoutModel(prompt));
+            route.end(System.nanoTime() - start, false);
+            return response;
+        } catch (RuntimeException e) {
+            route.end(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return Flux.defer(() -> {
+            Route route = choose();
+            long start = route.begin();
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            AtomicLong ttft = new AtomicLong(-1);
+            return route.model.stream(PromptOptions.withoutModel(prompt))
+                    .doOnNext(response -> {
+                        if (firstToken.compareAndSet(true, false))
+                        {
+                            ttft.set(System.nanoTime() - start);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        long latency = ttft.get() >= 0 ? ttft.get() : System.nanoTime() - start;
+                        if (signal == SignalType.CANCEL && ttft.get() < 0)
+                        {
+                            // 客户端在首 token 前取消，不代表后端好坏，只归还在途计数
+                            route.abandon();
+                            return;
+                        }
+                        route.end(latency, signal == SignalType.ON_ERROR);
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        // 由被选中的后端决定模型和默认参数
+        return ChatOptions.builder().build();
+    }
+
+    public List<RouteStats> stats()
+    {
+        long now = System.nanoTime();
+        List<RouteStats> stats = new ArrayList<>(routes.size());
+        for (Route route : routes)
+        {
+            stats.add(route.snapshot(now, errorPenalty));
+        }
+        return stats;
+    }
+
+    public List<Route> getRoutes()
+    {
+        return routes;
+    }
+
+    private Route choose()
+    {
+        if (routes.size() == 1)
+        {
+            return routes.get(0);
+        }
+        Route first = pickWeighted(null);
+        Route second = pickWeighted(first);
+        long now = System.nanoTime();
+        return first.cost(now, errorPenalty) <= second.cost(now, errorPenalty) ? first : second;
+    }
+
+    private Route pickWeighted(Route exclude)
+    {
+        double total = 0;
+        for (Route route : routes)
+        {
+            if (route != exclude)
+            {
+                total += route.weight;
+            }
+        }
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        Route last = null;
+        for (Route route : routes)
+        {
+            if (route == exclude)
+            {
+                continue;
+            }
+            last = route;
+            point -= route.weight;
+            if (point < 0)
+            {
+                return route;
+            }
+        }
+        return last;
+    }
+
+    public record RouteStats(String name, double weight, double latencyMillis, double errorRate,
+                             int inflight, long requests, long errors, double cost)
+    {
+    }
+
+    /**
+     * 一个后端及其统计，统计量的更新和读取都在 this 上同步
+     */
+    public static class Route
+    {
+        private static final double FAILURE_LATENCY_FACTOR = 2;
+        private static final double MAX_PENALTY_FACTOR = 64;
+        // 错误率每次调用的权重，约等于看最近 10 次调用
+        private static final double ERROR_ALPHA = 0.1;
+
+        private final String name;
+        private final ChatModel model;
+        private final double weight;
+        // 衰减时间常数，越小对变化越敏感
+        private final double decayNanos;
+        // 还没有样本时的假定延迟，让新后端也能分到流量
+        private final double initialLatencyNanos;
+
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        private double latencyNanos;
+        private double errorRate;
+        private long lastUpdateNanos;
+        private boolean sampled;
+
+        public Route(String name, ChatModel model, double weight, long decayMillis, long initialLatencyMillis)
+        {
+            if (weight <= 0)
+            {
+                throw new IllegalArgumentException("路由 " + name + " 的权重必须大于 0");
+            }
+            this.name = name;
+            this.model = model;
+            this.weight = weight;
+            this.decayNanos = decayMillis * 1_000_000.0;
+            this.initialLatencyNanos = initialLatencyMillis * 1_000_000.0;
+            this.lastUpdateNanos = System.nanoTime();
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getInflight()
+        {
+            return inflight.get();
+        }
+
+        public long getRequests()
+        {
+            return requests.get();
+        }
+
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        public synchronized double latencyMillis()
+        {
+            return decayedLatency(System.nanoTime()) / 1_000_000.0;
+        }
+
+        public synchronized double errorRate()
+        {
+            return decayedErrorRate(System.nanoTime());
+        }
+
+        private long begin()
+        {
+            inflight.incrementAndGet();
+            requests.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        private void abandon()
+        {
+            inflight.decrementAndGet();
+        }
+
+        private synchronized void end(long latency, boolean failed)
+        {
+            inflight.decrementAndGet();
+            if (failed)
+            {
+                errors.incrementAndGet();
+            }
+            long now = System.nanoTime();
+            double keep = Math.exp(-(now - lastUpdateNanos) / decayNanos);
+            double current = sampled ? latencyNanos : initialLatencyNanos;
+            double sample = latency;
+            if (failed)
+            {
+                // 失败按惩罚延迟记，比当前值大，peak-EWMA 下立即生效
+                sample = Math.max(latency, Math.min(Math.max(current, initialLatencyNanos) * FAILURE_LATENCY_FACTOR,
+                        initialLatencyNanos * MAX_PENALTY_FACTOR));
+            }
+            // peak-EWMA：比当前值慢的样本直接生效
+            latencyNanos = sample > current ? sample : current * keep + sample * (1 - keep);
+            errorRate = decayedErrorRate(now) * (1 - ERROR_ALPHA) + (failed ? ERROR_ALPHA : 0);
+            lastUpdateNanos = now;
+            sampled = true;
+        }
+
+        private synchronized double cost(long now, double errorPenalty)
+        {
+            return decayedLatency(now) * (inflight.get() + 1)
+                    * (1 + errorPenalty * decayedErrorRate(now)) / weight;
+        }
+
+        private synchronized RouteStats snapshot(long now, double errorPenalty)
+        {
+            return new RouteStats(name, weight, decayedLatency(now) / 1_000_000.0, decayedErrorRate(now),
+                    inflight.get(), requests.get(), errors.get(), cost(now, errorPenalty) / 1_000_000.0);
+        }
+
+        private double decayedLatency(long now)
+        {
+            if (!sampled)
+            {
+                return initialLatencyNanos;
+            }
+            // 长时间没有样本时向初始值回落，给退化的后端重新探测的机会
+            double keep = Math.exp(-(now - lastUpdateNanos) / decayNanos);
+            return latencyNanos * keep + initialLatencyNanos * (1 - keep);
+        }
+
+        private double decayedErrorRate(long now)
+        {
+            return errorRate * Math.exp(-(now - lastUpdateNanos) / decayNanos);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.redmoon2333.model;
+
+import com.redmoon2333.model.PromptClassifier.Classification;
+import com.redmoon2333.model.PromptClassifier.Tier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按请求难度分级路由：简单请求走本地 Ollama，一般请求走 qwen-plus，复杂请求走 deepseek
+ * <p>
+ * 分级在本地完成（见 {@link PromptClassifier}），不额外访问远端。本地模型在输出任何内容之前失败时升级到 STANDARD 重试一次。
+ * 指标：
+ * <ul>
+ *     <li>router.tier.requests{tier, reason}：各级请求数及判定原因</li>
+ *     <li>router.tier.prompt.tokens{tier}：各级的估算 prompt token 数</li>
+ *     <li>router.tier.classify：分级耗时</li>
+ *     <li>router.tier.escalations：本地失败升级次数</li>
+ * </ul>
+ */
+public class TieredChatModel implements ChatModel
+{
+    private static final Logger log = LoggerFactory.getLogger(TieredChatModel.class);
+
+    private final PromptClassifier classifier;
+    private final Map<Tier, ChatModel> models;
+    private final MeterRegistry registry;
+    private final Timer classifyTimer;
+    private final Counter escalations;
+
+    public TieredChatModel(PromptClassifier classifier, ChatModel local, ChatModel standard, ChatModel advanced,
+                           MeterRegistry registry)
+    {
+        this.classifier = classifier;
+        this.models = new EnumMap<>(Tier.class);
+        this.models.put(Tier.LOCAL, local);
+        this.models.put(Tier.STANDARD, standard);
+        this.models.put(Tier.ADVANCED, advanced);
+        this.registry = registry;
+        this.classifyTimer = Timer.builder("router.tier.classify").register(registry);
+        this.escalations = Counter.builder("router.tier.escalations").register(registry);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        Classification classification = classify(prompt);
+        Prompt routed = PromptOptions.withoutModel(prompt);
+        if (classification.tier() != Tier.LOCAL)
+        {
+            return models.get(classification.tier()).call(routed);
+        }
+        try {
+            return models.get(Tier.LOCAL).call(routed);
+        } catch (RuntimeException e) {
+            escalate(e);
+            return models.get(Tier.STANDARD).call(routed);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return Flux.defer(() -> {
+            Classification classification = classify(prompt);
+            Prompt routed = PromptOptions.withoutModel(prompt);
+            if (classification.tier() != Tier.LOCAL)
+            {
+                return models.get(classification.tier()).stream(routed);
+            }
+            AtomicBoolean emitted = new AtomicBoolean();
+            return models.get(Tier.LOCAL).stream(routed)
+                    .doOnNext(response -> emitted.set(true))
+                    .onErrorResume(error -> {
+                        if (emitted.get())
+                        {
+                            return Flux.error(error);
+                        }
+                        escalate(error);
+                        return models.get(Tier.STANDARD).stream(routed);
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        // 由被选中的模型决定模型和默认参数
+        return ChatOptions.builder().build();
+    }
+
+    public Classification classify(Prompt prompt)
+    {
+        long start = System.nanoTime();
+        Classification classification = classifier.classify(prompt);
+        classifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        String tier = classification.tier().name().toLowerCase(Locale.ROOT);
+        Counter.builder("router.tier.requests")
+                .tag("tier", tier)
+                .tag("reason", classification.reason())
+                .register(registry)
+                .increment();
+        DistributionSummary.builder("router.tier.prompt.tokens")
+                .tag("tier", tier)
+                .register(registry)
+                .record(classification.estimatedTokens());
+        return classification;
+    }
+
+    private void escalate(Throwable error)
+    {
+        escalations.increment();
+        log.warn("本地模型失败，升级到 STANDARD: {}", error.toString());
+    }
+}
@@ -0,0 +1,126 @@
+package com.redmoon2333.warmup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ollama 模型预热与保活
+ * <ul>
+ *     <li>启动后立即在后台给每个模型发一个 1 token 的请求，把模型加载进内存，同时带上 keep_alive 让它常驻</li>
+ *     <li>之后每隔 interval 重新预热一次（间隔应小于 keep_alive），Ollama 重启或模型被换出后也能自动恢复；失败时按 retryInterval 重试</li>
+ *     <li>作为健康检查挂到 readiness 分组：任一模型未预热成功时为 OUT_OF_SERVICE，负载均衡不会把流量打到冷模型上</li>
+ * </ul>
+ */
+public class OllamaWarmup implements HealthIndicator
+{
+    private static final Logger log = LoggerFactory.getLogger(OllamaWarmup.class);
+
+    private final ChatModel ollamaChatModel;
+    private final List<String> models;
+    private final String keepAlive;
+    private final Duration interval;
+    private final Duration retryInterval;
+    private final Map<String, ModelStatus> statuses = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public OllamaWarmup(ChatModel ollamaChatModel, List<String> models, String keepAlive,
+                        Duration interval, Duration retryInterval)
+    {
+        this.ollamaChatModel = ollamaChatModel;
+        this.models = List.copyOf(models);
+        this.keepAlive = keepAlive;
+        this.interval = interval;
+        this.retryInterval = retryInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ollama-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start()
+    {
+        for (String model : models)
+        {
+            scheduler.execute(() -> warm(model));
+        }
+    }
+
+    public void stop()
+    {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isWarm()
+    {
+        for (String model : models)
+        {
+            ModelStatus status = statuses.get(model);
+            if (status == null || !status.warm())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Health health()
+    {
+        Map<String, Object> details = new LinkedHashMap<>();
+        for (String model : models)
+        {
+            ModelStatus status = statuses.get(model);
+            details.put(model, status == null ? "warming" : status);
+        }
+        return (isWarm() ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+
+    private void warm(String model)
+    {
+        long start = System.nanoTime();
+        boolean warm;
+        try {
+            ollamaChatModel.call(new Prompt("hi", OllamaOptions.builder()
+                    .model(model)
+                    .numPredict(1)
+                    .keepAlive(keepAlive)
+                    .build()));
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            statuses.put(model, new ModelStatus(true, Instant.now(), millis, null));
+            log.info("Ollama 模型 {} 预热完成，耗时 {}ms，keep_alive={}", model, millis, keepAlive);
+            warm = true;
+        } catch (RuntimeException e) {
+            // 曾经预热成功过也标记为冷，Ollama 可能已经重启
+            statuses.put(model, new ModelStatus(false, Instant.now(), -1, e.getMessage()));
+            log.warn("Ollama 模型 {} 预热失败，{}s 后重试: {}", model, retryInterval.toSeconds(), e.getMessage());
+            warm = false;
+        }
+        if (!scheduler.isShutdown())
+        {
+            scheduler.schedule(() -> warm(model), (warm ? interval : retryInterval).toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param loadMillis 最近一次预热请求耗时，冷启动时约等于模型加载时间
+     */
+    public record ModelStatus(boolean warm, Instant lastAttempt, long loadMillis, String error)
+    {
+    }
+}
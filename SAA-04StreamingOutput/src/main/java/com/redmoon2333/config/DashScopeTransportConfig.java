@@ -0,0 +1,79 @@
+package com.redmoon2333.config;
+
+import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * 所有模型共用的 DashScope 传输层
+ * <p>
+ * 原来每个模型 Bean 各自 DashScopeApi.builder().build()，各有一套 HTTP 客户端和连接池，连接不能复用。
+ * 这里统一为一个 reactor-netty 连接池：keep-alive、可协商 HTTP/2、响应压缩，
+ * 同步调用（RestClient）和流式调用（WebClient）共用同一个 HttpClient。
+ */
+@Configuration
+public class DashScopeTransportConfig
+{
+    @Value("${dashscope.http.max-connections:200}")
+    private int maxConnections;
+    // 连接池满时等待空闲连接的时间
+    @Value("${dashscope.http.pending-acquire-timeout-millis:5000}")
+    private long pendingAcquireTimeoutMillis;
+    @Value("${dashscope.http.max-idle-seconds:60}")
+    private long maxIdleSeconds;
+    @Value("${dashscope.http.connect-timeout-millis:3000}")
+    private int connectTimeoutMillis;
+    // 两次读到数据之间的最长间隔，流式输出时即 token 间的最长等待
+    @Value("${dashscope.http.read-timeout-seconds:120}")
+    private long readTimeoutSeconds;
+    @Value("${dashscope.http.http2:true}")
+    private boolean http2;
+    @Value("${dashscope.http.compress:true}")
+    private boolean compress;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider dashScopeConnectionProvider()
+    {
+        return ConnectionProvider.builder("dashscope")
+                    .maxConnections(maxConnections)
+                    .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMillis))
+                    .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                    .evictInBackground(Duration.ofSeconds(30))
+                .build();
+    }
+
+    @Bean
+    public HttpClient dashScopeHttpClient(ConnectionProvider dashScopeConnectionProvider)
+    {
+        HttpClient httpClient = HttpClient.create(dashScopeConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofSeconds(readTimeoutSeconds))
+                .compress(compress);
+        // DashScope 走 https，HTTP/2 通过 TLS ALPN 协商，服务端不支持时回落到 HTTP/1.1
+        return http2
+                ? httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure()
+                : httpClient.protocol(HttpProtocol.HTTP11);
+    }
+
+    @Bean
+    public DashScopeApi dashScopeApi(HttpClient dashScopeHttpClient)
+    {
+        return DashScopeApi.builder()
+                    .apiKey(System.getenv("aliQwen_api"))
+                    .restClientBuilder(RestClient.builder().requestFactory(new ReactorClientHttpRequestFactory(dashScopeHttpClient)))
+                    .webClientBuilder(WebClient.builder().clientConnector(new ReactorClientHttpConnector(dashScopeHttpClient)))
+                .build();
+    }
+}
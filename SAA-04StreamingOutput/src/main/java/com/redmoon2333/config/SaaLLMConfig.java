@@ -3,13 +3,20 @@ package com.redmoon2333.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.redmoon2333.limit.DashScopeRateLimiter;
+import com.redmoon2333.limit.RateLimitedChatModel;
+import com.redmoon2333.model.HedgingChatModel;
+import com.redmoon2333.model.SingleFlightChatModel;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * @auther zzyybs@126.com
  * @create 2025-07-25 18:53
@@ -23,21 +30,37 @@ public class SaaLLMConfig
     private final String QWEN_MODEL = "qwen-max";
 
     @Bean(name = "deepseek")
-    public ChatModel deepSeek()
+    public ChatModel deepSeek(DashScopeApi dashScopeApi, DashScopeRateLimiter rateLimiter,
+                             @Value("${dashscope.limit.expected-completion-tokens:512}") int expectedCompletionTokens)
     {
-        return DashScopeChatModel.builder()
-                .dashScopeApi(DashScopeApi.builder().apiKey(System.getenv("aliQwen_api")).build())
+        // 相同的并发流式请求共享一次上游调用；限流在单飞内层，合并后的请求只占一个许可
+        return new SingleFlightChatModel(new RateLimitedChatModel(DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build())
-                .build();
+                .build(), rateLimiter, expectedCompletionTokens));
     }
 
     @Bean(name = "qwen")
-    public ChatModel qwen()
+    public ChatModel qwen(DashScopeApi dashScopeApi, DashScopeRateLimiter rateLimiter,
+                        @Value("${dashscope.limit.expected-completion-tokens:512}") int expectedCompletionTokens)
     {
-        return DashScopeChatModel.builder()
-                .dashScopeApi(DashScopeApi.builder().apiKey(System.getenv("aliQwen_api")).build())
+        // 相同的并发流式请求共享一次上游调用；限流在单飞内层，合并后的请求只占一个许可
+        return new SingleFlightChatModel(new RateLimitedChatModel(DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder().withModel(QWEN_MODEL).build())
-                .build();
+                .build(), rateLimiter, expectedCompletionTokens));
+    }
+
+    /**
+     * 对冲模型：主模型 deepseek，首 token 超过 hedge-delay 仍未返回时加发 qwen，先出 token 的胜出
+     */
+    @Bean(name = "hedging")
+    public ChatModel hedging(@Qualifier("deepseek") ChatModel deepseek, @Qualifier("qwen") ChatModel qwen,
+                             @Value("${chat.hedge.delay-millis:800}") long hedgeDelayMillis,
+                             @Value("${chat.hedge.ratio:0.1}") double hedgeRatio,
+                             @Value("${chat.hedge.burst:10}") int hedgeBurst)
+    {
+        return new HedgingChatModel(deepseek, qwen, Duration.ofMillis(hedgeDelayMillis), hedgeRatio, hedgeBurst);
     }
 
     @Bean(name = "deepseekChatClient")
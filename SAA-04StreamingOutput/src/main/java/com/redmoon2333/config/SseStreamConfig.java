@@ -0,0 +1,46 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.stream.ResumableStreamRegistry;
+import com.redmoon2333.stream.SseTokenCoalescer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * text/event-stream 输出的合并与续传参数
+ */
+@Configuration
+public class SseStreamConfig
+{
+    // 缓冲最长停留时间
+    @Value("${stream.sse.flush-millis:50}")
+    private long flushMillis;
+    // 缓冲达到该字节数立即发一帧
+    @Value("${stream.sse.max-bytes:512}")
+    private int maxBytes;
+    // 空闲保活间隔
+    @Value("${stream.sse.heartbeat-seconds:15}")
+    private long heartbeatSeconds;
+    // 续传缓冲：每条流最多保留的块数、结束后保留时间、客户端断开后上游继续生成的宽限期
+    @Value("${stream.resume.max-chunks:4096}")
+    private int resumeMaxChunks;
+    @Value("${stream.resume.ttl-seconds:60}")
+    private long resumeTtlSeconds;
+    @Value("${stream.resume.grace-seconds:30}")
+    private long resumeGraceSeconds;
+
+    @Bean
+    public SseTokenCoalescer sseTokenCoalescer()
+    {
+        return new SseTokenCoalescer(Duration.ofMillis(flushMillis), maxBytes, Duration.ofSeconds(heartbeatSeconds));
+    }
+
+    @Bean
+    public ResumableStreamRegistry resumableStreamRegistry()
+    {
+        return new ResumableStreamRegistry(resumeMaxChunks,
+                Duration.ofSeconds(resumeTtlSeconds), Duration.ofSeconds(resumeGraceSeconds));
+    }
+}
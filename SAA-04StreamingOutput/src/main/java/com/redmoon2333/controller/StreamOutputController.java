@@ -1,13 +1,20 @@
 package com.redmoon2333.controller;
 
+import com.redmoon2333.stream.ResumableStreamRegistry;
+import com.redmoon2333.stream.SseTokenCoalescer;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
+import java.util.function.Supplier;
+
 @RestController
 public class StreamOutputController
 {
@@ -46,4 +53,60 @@ public class StreamOutputController
     {
         return qwenChatClient.prompt(question).stream().content();
     }
+
+    //V3 text/event-stream，token 合并成帧后再发送，降低高并发下每个 token 一次 flush 的开销；
+    //   断线重连带 Last-Event-ID 时从断点续传，不重新生成
+    @Resource
+    private SseTokenCoalescer sseTokenCoalescer;
+    @Resource
+    private ResumableStreamRegistry resumableStreamRegistry;
+
+    @GetMapping(value = "/stream/sse/chatflux1", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> sseChatflux(@RequestParam(name = "question",defaultValue = "你是谁") String question,
+                                                     @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+    {
+        return resumable(lastEventId, ResumableStreamRegistry.binding("/stream/sse/chatflux1", question), () -> deepseekChatModel.stream(question));
+    }
+
+    @GetMapping(value = "/stream/sse/chatflux2", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> sseChatflux2(@RequestParam(name = "question",defaultValue = "你是谁") String question,
+                                                      @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+    {
+        return resumable(lastEventId, ResumableStreamRegistry.binding("/stream/sse/chatflux2", question), () -> qwenChatModel.stream(question));
+    }
+
+    @GetMapping(value = "/stream/sse/chatflux3", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> sseChatflux3(@RequestParam(name = "question",defaultValue = "你是谁") String question,
+                                                      @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+    {
+        return resumable(lastEventId, ResumableStreamRegistry.binding("/stream/sse/chatflux3", question), () -> deepseekChatClient.prompt(question).stream().content());
+    }
+
+    @GetMapping(value = "/stream/sse/chatflux4", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> sseChatflux4(@RequestParam(name = "question",defaultValue = "你是谁") String question,
+                                                      @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+    {
+        return resumable(lastEventId, ResumableStreamRegistry.binding("/stream/sse/chatflux4", question), () -> qwenChatClient.prompt(question).stream().content());
+    }
+
+    private Flux<ServerSentEvent<String>> resumable(String lastEventId, String binding, Supplier<Flux<String>> generation)
+    {
+        ResumableStreamRegistry.ResumableStream stream = resumableStreamRegistry.resume(lastEventId, binding);
+        if (stream == null)
+        {
+            // 首次请求、续传缓冲已过期，或者 Last-Event-ID 属于别的接口/问题：重新生成
+            stream = resumableStreamRegistry.open(binding, generation.get());
+        }
+        return sseTokenCoalescer.coalesce(stream.tokens(), stream.id(), stream.afterOffset());
+    }
+
+    //V4 对冲：deepseek 首 token 太慢时加发 qwen，先返回的胜出
+    @Resource(name = "hedging")
+    private ChatModel hedgingChatModel;
+
+    @GetMapping(value = "/stream/hedge/chatflux")
+    public Flux<String> hedgeChatflux(@RequestParam(name = "question",defaultValue = "你是谁") String question)
+    {
+        return hedgingChatModel.stream(question);
+    }
 }
@@ -0,0 +1,134 @@
+package com.redmoon2333.model;
+
+import cn.hutool.crypto.SecureUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式请求合并（single-flight）
+ * <p>
+ * 同一时刻相同的 prompt（模型、全部参数、消息完全一致）只向 DashScope 发起一次流式请求，
+ * 其余请求订阅同一个 replay 的 Flux：后加入的请求先收到已经生成的前缀，再跟着实时输出。
+ * <ul>
+ *     <li>上游结束（完成/出错/所有订阅者取消）后立即从表中移除，之后的相同请求重新调用模型，不做结果缓存</li>
+ *     <li>所有订阅者都取消时 refCount 归零，上游连接一并取消</li>
+ *     <li>带工具调用的请求可能有副作用，不参与合并</li>
+ *     <li>合并键包含完整序列化的 options，无法序列化的 options 不参与合并</li>
+ * </ul>
+ * ChatClient 最终也走 ChatModel.stream(Prompt)，包装 ChatModel 即可同时覆盖两种调用方式。
+ */
+@Slf4j
+public class SingleFlightChatModel implements ChatModel
+{
+    private final ChatModel delegate;
+    private final Map<String, Flux<ChatResponse>> inflight = new ConcurrentHashMap<>();
+
+    public SingleFlightChatModel(ChatModel delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        return delegate.call(prompt);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        if (hasTools(prompt.getOptions()))
+        {
+            return delegate.stream(prompt);
+        }
+        String key = flightKey(prompt);
+        if (key == null)
+        {
+            return delegate.stream(prompt);
+        }
+        // 订阅时才登记，避免创建了 Flux 却没人订阅导致表项残留
+        return Flux.defer(() -> inflight.computeIfAbsent(key, k -> {
+            log.debug("single-flight 新建上游流: {}", k);
+            // 只移除自己登记的表项：上游结束后到 doFinally 执行前，相同 key 可能已经登记了新的一轮
+            AtomicReference<Flux<ChatResponse>> self = new AtomicReference<>();
+            Flux<ChatResponse> shared = delegate.stream(prompt)
+                    .doFinally(signal -> inflight.remove(k, self.get()))
+                    .replay()
+                    .refCount();
+            self.set(shared);
+            return shared;
+        }));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * 当前正在共享的上游流数量
+     */
+    public int inflightCount()
+    {
+        return inflight.size();
+    }
+
+    /**
+     * @return 无法完整序列化 options 时返回 null，该请求不参与合并
+     */
+    private String flightKey(Prompt prompt)
+    {
+        String options = serializeOptions(prompt.getOptions() != null ? prompt.getOptions() : delegate.getDefaultOptions());
+        if (options == null)
+        {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(options);
+        for (Message message : prompt.getInstructions())
+        {
+            key.append('\u0001').append(message.getMessageType().getValue()).append('\u0002').append(message.getText());
+            if (message instanceof UserMessage userMessage && !userMessage.getMedia().isEmpty())
+            {
+                userMessage.getMedia().forEach(media -> key.append('\u0003').append(media.getMimeType()).append(media.getData()));
+            }
+        }
+        return SecureUtil.sha256(key.toString());
+    }
+
+    /**
+     * options 按实际类型完整序列化，DashScope 专有参数（enableSearch、seed、responseFormat 等）也计入 key，
+     * 只差一个专有参数的两个请求不会被错误合并
+     */
+    private static String serializeOptions(ChatOptions options)
+    {
+        if (options == null)
+        {
+            return "default";
+        }
+        try {
+            return options.getClass().getName() + ModelOptionsUtils.toJsonString(options);
+        } catch (RuntimeException e) {
+            log.debug("options 无法序列化，不参与 single-flight: {}", options.getClass().getName(), e);
+            return null;
+        }
+    }
+
+    private static boolean hasTools(ChatOptions options)
+    {
+        return options instanceof ToolCallingChatOptions toolOptions
+                && (!toolOptions.getToolCallbacks().isEmpty() || !toolOptions.getToolNames().isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+package com.redmoon2333.stream;
+
+import cn.hutool.crypto.SecureUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可续传的流：客户端断线重连时带上 Last-Event-ID，从断开的位置继续输出，不再重新生成
+ * <p>
+ * 每条流一个 streamId，上游输出按序编号（offset 从 0 开始）进入有界的 replay 缓冲，事件 id 格式为 streamId:offset。
+ * <ul>
+ *     <li>上游在创建时立即订阅，与客户端连接解耦：客户端断开后继续生成，断开超过 grace 仍未重连才取消上游</li>
+ *     <li>上游结束后缓冲再保留 ttl，供晚到的重连读取</li>
+ *     <li>缓冲最多保留 maxChunks 个块，丢失的部分已被淘汰、或 streamId 已过期时 resume 返回 null，由调用方重新生成</li>
+ *     <li>每条流绑定 接口 + 请求参数 的摘要，续传时必须一致，不能拿别的接口或别的问题的 Last-Event-ID 读取这条流</li>
+ * </ul>
+ * 缓冲在本机内存，多实例部署时重连需要落到同一实例（按 Cookie 或 IP 粘性）。
+ */
+@Slf4j
+public class ResumableStreamRegistry implements DisposableBean
+{
+    public record ResumableStream(String id, long afterOffset, Flux<String> tokens)
+    {
+    }
+
+    private final int maxChunks;
+    private final long ttlNanos;
+    private final long graceNanos;
+    private final Map<String, Entry> streams = new ConcurrentHashMap<>();
+    private final Disposable sweeper;
+
+    public ResumableStreamRegistry(int maxChunks, Duration ttl, Duration grace)
+    {
+        this.maxChunks = maxChunks;
+        this.ttlNanos = ttl.toNanos();
+        this.graceNanos = grace.toNanos();
+        this.sweeper = Schedulers.single().schedulePeriodically(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 接口路径 + 请求参数的摘要，open 和 resume 时传入同样的值
+     */
+    public static String binding(String endpoint, Object... params)
+    {
+        StringBuilder text = new StringBuilder(endpoint);
+        for (Object param : params)
+        {
+            text.append('\u0001').append(param);
+        }
+        return SecureUtil.sha256(text.toString());
+    }
+
+    /**
+     * 登记一条新的流并立即开始生成
+     * @param binding {@link #binding(String, Object...)} 的结果
+     */
+    public ResumableStream open(String binding, Flux<String> upstream)
+    {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Entry entry = new Entry(binding);
+        entry.replay = upstream.index()
+                .doOnNext(indexed -> entry.emitted.incrementAndGet())
+                .doFinally(signal -> entry.terminatedAtNanos = System.nanoTime())
+                .replay(maxChunks)
+                .autoConnect(0, connection -> entry.connection = connection);
+        streams.put(id, entry);
+        return new ResumableStream(id, -1, view(entry, -1));
+    }
+
+    /**
+     * 按 Last-Event-ID（streamId:offset）续传，无法续传时返回 null
+     * @param binding 与 open 时一致才续传，否则视为新请求
+     */
+    public ResumableStream resume(String lastEventId, String binding)
+    {
+        if (lastEventId == null)
+        {
+            return null;
+        }
+        int separator = lastEventId.lastIndexOf(':');
+        if (separator <= 0)
+        {
+            return null;
+        }
+        String id = lastEventId.substring(0, separator);
+        long offset;
+        try {
+            offset = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Entry entry = streams.get(id);
+        if (entry == null)
+        {
+            log.debug("流 {} 已过期，重新生成", id);
+            return null;
+        }
+        if (!entry.binding.equals(binding))
+        {
+            log.debug("流 {} 的接口或请求参数不一致，不续传", id);
+            return null;
+        }
+        // replay 只保留最近 maxChunks 个，客户端缺的部分已经被淘汰
+        if (offset + 1 < entry.emitted.get() - maxChunks)
+        {
+            log.debug("流 {} 缺失的 offset {} 已超出缓冲，重新生成", id, offset);
+            return null;
+        }
+        return new ResumableStream(id, offset, view(entry, offset));
+    }
+
+    public int size()
+    {
+        return streams.size();
+    }
+
+    @Override
+    public void destroy()
+    {
+        sweeper.dispose();
+        streams.values().forEach(Entry::cancel);
+        streams.clear();
+    }
+
+    private Flux<String> view(Entry entry, long afterOffset)
+    {
+        return entry.replay
+                .skipWhile(indexed -> indexed.getT1() <= afterOffset)
+                .map(Tuple2::getT2)
+                .doOnSubscribe(subscription -> entry.subscribers.incrementAndGet())
+                .doFinally(signal -> {
+                    if (entry.subscribers.decrementAndGet() == 0)
+                    {
+                        entry.idleSinceNanos = System.nanoTime();
+                    }
+                });
+    }
+
+    private void sweep()
+    {
+        long now = System.nanoTime();
+        streams.forEach((id, entry) -> {
+            if (entry.terminatedAtNanos != 0)
+            {
+                if (now - entry.terminatedAtNanos > ttlNanos)
+                {
+                    streams.remove(id, entry);
+                }
+            }
+            else if (entry.subscribers.get() == 0 && now - entry.idleSinceNanos > graceNanos)
+            {
+                log.debug("流 {} 超过 {}s 无人订阅，取消上游生成", id, TimeUnit.NANOSECONDS.toSeconds(graceNanos));
+                entry.cancel();
+                streams.remove(id, entry);
+            }
+        });
+    }
+
+    private static class Entry
+    {
+        private final String binding;
+        private Flux<Tuple2<Long, String>> replay;
+        private volatile Disposable connection;
+        private final AtomicInteger subscribers = new AtomicInteger();
+        private final AtomicLong emitted = new AtomicLong();
+        private volatile long idleSinceNanos = System.nanoTime();
+        private volatile long terminatedAtNanos;
+
+        private Entry(String binding)
+        {
+            this.binding = binding;
+        }
+
+        private void cancel()
+        {
+            Disposable current = connection;
+            if (current != null)
+            {
+                current.dispose();
+            }
+        }
+    }
+}
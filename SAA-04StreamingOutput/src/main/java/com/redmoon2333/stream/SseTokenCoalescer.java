@@ -0,0 +1,216 @@
+package com.redmoon2333.stream;
+
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把模型逐 token 的输出合并成 SSE 帧
+ * <p>
+ * 原来的 /stream/chatflux 每个 token 一次 write + flush，并发流多时系统调用和分帧开销占满 CPU。
+ * 这里按 flushInterval 或 maxBytes（先到者）把 token 攒成一帧再发：
+ * <ul>
+ *     <li>第一个 token 立即发出，保证首字延迟不变</li>
+ *     <li>之后的 token 进缓冲，到时间或攒够字节数再发一帧；只在缓冲由空变为非空时登记一次性的定时刷新，空闲的流不占用定时器</li>
+ *     <li>每帧带递增的 id；保活由单独的低频定时器负责，空闲超过 heartbeatInterval 发一条注释行，防止代理断开</li>
+ *     <li>正常结束时补发一个 done 事件，客户端据此关闭，不会触发 EventSource 自动重连</li>
+ * </ul>
+ * 配合 ResumableStreamRegistry 使用时，帧 id 为 streamId:offset（帧内最后一个 token 的序号），可直接作为 Last-Event-ID 续传。
+ */
+public class SseTokenCoalescer
+{
+    public static final String DONE_EVENT = "done";
+
+    private final long flushIntervalMillis;
+    private final int maxBytes;
+    private final long heartbeatIntervalNanos;
+    private final Scheduler scheduler;
+
+    public SseTokenCoalescer(Duration flushInterval, int maxBytes, Duration heartbeatInterval)
+    {
+        this(flushInterval, maxBytes, heartbeatInterval, Schedulers.parallel());
+    }
+
+    public SseTokenCoalescer(Duration flushInterval, int maxBytes, Duration heartbeatInterval, Scheduler scheduler)
+    {
+        this.flushIntervalMillis = flushInterval.toMillis();
+        this.maxBytes = maxBytes;
+        this.heartbeatIntervalNanos = heartbeatInterval.toNanos();
+        this.scheduler = scheduler;
+    }
+
+    public Flux<ServerSentEvent<String>> coalesce(Flux<String> tokens)
+    {
+        return coalesce(tokens, null, -1);
+    }
+
+    /**
+     * @param streamId    非空时帧 id 使用 streamId:offset
+     * @param afterOffset tokens 中第一个元素之前的序号，新流为 -1，续传时为 Last-Event-ID 中的 offset
+     */
+    public Flux<ServerSentEvent<String>> coalesce(Flux<String> tokens, String streamId, long afterOffset)
+    {
+        return Flux.create(sink -> {
+            Frame frame = new Frame(sink, streamId, afterOffset);
+            Disposable heartbeat = scheduler.schedulePeriodically(frame::heartbeat,
+                    heartbeatIntervalNanos, heartbeatIntervalNanos, TimeUnit.NANOSECONDS);
+            Disposable upstream = tokens.subscribe(frame::onToken, frame::onError, frame::onComplete);
+            sink.onDispose(() -> {
+                heartbeat.dispose();
+                frame.cancelPendingFlush();
+                upstream.dispose();
+            });
+        });
+    }
+
+    /**
+     * 单条流的缓冲状态，token 回调与定时器在不同线程，统一用 this 加锁
+     */
+    private class Frame
+    {
+        private final FluxSink<ServerSentEvent<String>> sink;
+        private final String streamId;
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferedBytes;
+        private long sequence;
+        private long offset;
+        private long lastSentNanos = System.nanoTime();
+        private boolean firstSent;
+        private boolean terminated;
+        // 已登记但还没执行的一次性刷新
+        private Disposable pendingFlush;
+
+        private Frame(FluxSink<ServerSentEvent<String>> sink, String streamId, long afterOffset)
+        {
+            this.sink = sink;
+            this.streamId = streamId;
+            this.offset = afterOffset;
+        }
+
+        private synchronized void onToken(String token)
+        {
+            // 空 token 也占一个序号，与 ResumableStreamRegistry 的编号保持一致
+            offset++;
+            if (terminated || token == null || token.isEmpty())
+            {
+                return;
+            }
+            buffer.append(token);
+            bufferedBytes += utf8Length(token);
+            if (!firstSent || bufferedBytes >= maxBytes)
+            {
+                firstSent = true;
+                flush();
+            }
+            else if (pendingFlush == null)
+            {
+                pendingFlush = scheduler.schedule(this::scheduledFlush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void scheduledFlush()
+        {
+            pendingFlush = null;
+            if (!terminated)
+            {
+                flush();
+            }
+        }
+
+        private synchronized void heartbeat()
+        {
+            if (!terminated && buffer.length() == 0 && System.nanoTime() - lastSentNanos >= heartbeatIntervalNanos)
+            {
+                sink.next(ServerSentEvent.<String>builder().comment("keep-alive").build());
+                lastSentNanos = System.nanoTime();
+            }
+        }
+
+        private synchronized void cancelPendingFlush()
+        {
+            if (pendingFlush != null)
+            {
+                pendingFlush.dispose();
+                pendingFlush = null;
+            }
+        }
+
+        private synchronized void onError(Throwable error)
+        {
+            if (terminated)
+            {
+                return;
+            }
+            // 已经生成的内容先发给客户端，再传递异常
+            flush();
+            terminated = true;
+            sink.error(error);
+        }
+
+        private synchronized void onComplete()
+        {
+            if (terminated)
+            {
+                return;
+            }
+            flush();
+            terminated = true;
+            sink.next(ServerSentEvent.<String>builder("").id(nextId()).event(DONE_EVENT).build());
+            sink.complete();
+        }
+
+        private void flush()
+        {
+            cancelPendingFlush();
+            if (buffer.length() == 0)
+            {
+                return;
+            }
+            sink.next(ServerSentEvent.<String>builder(buffer.toString()).id(nextId()).build());
+            buffer.setLength(0);
+            bufferedBytes = 0;
+            lastSentNanos = System.nanoTime();
+        }
+
+        private String nextId()
+        {
+            return streamId == null ? String.valueOf(++sequence) : streamId + ":" + offset;
+        }
+    }
+
+    /**
+     * 按 UTF-8 计算字节数，不生成中间 byte[]
+     */
+    private static int utf8Length(String text)
+    {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c < 0x80)
+            {
+                bytes += 1;
+            }
+            else if (c < 0x800)
+            {
+                bytes += 2;
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+                bytes += 4;
+                i++;
+            }
+            else
+            {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
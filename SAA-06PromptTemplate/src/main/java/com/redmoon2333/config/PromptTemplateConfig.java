@@ -0,0 +1,20 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.template.PromptTemplateRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class PromptTemplateConfig
+{
+    // 启动时加载并预编译的模板位置
+    @Value("${prompt.template.location:classpath*:prompttemplate/*.txt}")
+    private String location;
+
+    @Bean
+    public PromptTemplateRegistry promptTemplateRegistry()
+    {
+        return new PromptTemplateRegistry(location);
+    }
+}
@@ -3,6 +3,7 @@ package com.redmoon2333.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.redmoon2333.token.TokenBudgetAdvisor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
@@ -23,12 +24,10 @@ public class SaaLLMConfig
     private final String QWEN_MODEL = "qwen-plus";
 
     @Bean(name = "deepseek")
-    public ChatModel deepSeek()
+    public ChatModel deepSeek(DashScopeApi dashScopeApi)
     {
         return DashScopeChatModel.builder()
-                        .dashScopeApi(DashScopeApi.builder()
-                                    .apiKey(System.getenv("aliQwen_api"))
-                                .build())
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build()
                 )
@@ -36,11 +35,9 @@ public class SaaLLMConfig
     }
 
     @Bean(name = "qwen")
-    public ChatModel qwen()
+    public ChatModel qwen(DashScopeApi dashScopeApi)
     {
-        return DashScopeChatModel.builder().dashScopeApi(DashScopeApi.builder()
-                        .apiKey(System.getenv("aliQwen_api"))
-                        .build())
+        return DashScopeChatModel.builder().dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder()
                                 .withModel(QWEN_MODEL)
@@ -50,23 +47,25 @@ public class SaaLLMConfig
     }
 
     @Bean(name = "deepseekChatClient")
-    public ChatClient deepseekChatClient(@Qualifier("deepseek") ChatModel deepSeek)
+    public ChatClient deepseekChatClient(@Qualifier("deepseek") ChatModel deepSeek, TokenBudgetAdvisor tokenBudgetAdvisor)
     {
         return ChatClient.builder(deepSeek)
                 .defaultOptions(ChatOptions.builder()
                         .model(DEEPSEEK_MODEL)
                         .build())
+                .defaultAdvisors(tokenBudgetAdvisor)
                 .build();
     }
 
 
     @Bean(name = "qwenChatClient")
-    public ChatClient qwenChatClient(@Qualifier("qwen") ChatModel qwen)
+    public ChatClient qwenChatClient(@Qualifier("qwen") ChatModel qwen, TokenBudgetAdvisor tokenBudgetAdvisor)
     {
         return ChatClient.builder(qwen)
                 .defaultOptions(ChatOptions.builder()
                         .model(QWEN_MODEL)
                         .build())
+                .defaultAdvisors(tokenBudgetAdvisor)
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.token.TokenBudgetAdvisor;
+import com.redmoon2333.token.TokenizerService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 本地分词 + 请求前 token 预算
+ */
+@Configuration
+public class TokenBudgetConfig
+{
+    // jtokkit 编码名称，以及换算到 qwen 词表的初始系数（运行时按 usage 自动校准）
+    @Value("${token.tokenizer.encoding:cl100k_base}")
+    private String encoding;
+    @Value("${token.tokenizer.ratio:1.0}")
+    private double ratio;
+    // 收到第一个 usage 之前从严估算的系数
+    @Value("${token.tokenizer.uncalibrated-ratio:1.5}")
+    private double uncalibratedRatio;
+    @Value("${token.tokenizer.cache-size:2048}")
+    private int cacheSize;
+    @Value("${token.tokenizer.cache-max-chars:4096}")
+    private int cacheMaxChars;
+    // 默认预算
+    @Value("${token.budget.max-input:6000}")
+    private int maxInput;
+    @Value("${token.budget.max-output:2000}")
+    private int maxOutput;
+    @Value("${token.budget.mode:truncate}")
+    private String mode;
+    // 按接口覆盖，格式 路径:maxInput:maxOutput:mode，例如 /prompttemplate/chat:500:1500:reject
+    @Value("${token.budget.endpoints:}")
+    private List<String> endpoints;
+
+    @Bean
+    public TokenizerService tokenizerService(MeterRegistry meterRegistry)
+    {
+        TokenizerService tokenizerService = new TokenizerService(encoding, ratio, uncalibratedRatio, cacheSize, cacheMaxChars);
+        Gauge.builder("chat.tokenizer.ratio", tokenizerService, TokenizerService::getRatio).register(meterRegistry);
+        Gauge.builder("chat.tokenizer.calibrated", tokenizerService, service -> service.isCalibrated() ? 1 : 0)
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.tokenizer.out-of-range", tokenizerService, TokenizerService::getOutOfRangeSamples)
+                .register(meterRegistry);
+        return tokenizerService;
+    }
+
+    @Bean
+    public TokenBudgetAdvisor tokenBudgetAdvisor(TokenizerService tokenizerService, MeterRegistry meterRegistry)
+    {
+        Map<String, TokenBudgetAdvisor.Budget> budgets = new HashMap<>();
+        for (String endpoint : endpoints)
+        {
+            if (endpoint.isBlank())
+            {
+                continue;
+            }
+            String[] parts = endpoint.trim().split(":");
+            if (parts.length != 4)
+            {
+                throw new IllegalArgumentException("token.budget.endpoints 格式应为 路径:maxInput:maxOutput:mode，实际: " + endpoint);
+            }
+            budgets.put(parts[0], budget(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), parts[3]));
+        }
+        return new TokenBudgetAdvisor(tokenizerService, budget(maxInput, maxOutput, mode), budgets,
+                meterRegistry, Ordered.LOWEST_PRECEDENCE - 100);
+    }
+
+    private static TokenBudgetAdvisor.Budget budget(int maxInput, int maxOutput, String mode)
+    {
+        return new TokenBudgetAdvisor.Budget(maxInput, maxOutput,
+                TokenBudgetAdvisor.Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT)));
+    }
+}
@@ -1,18 +1,15 @@
 package com.redmoon2333.controller;
 
+import com.redmoon2333.prompt.PromptAssembler;
+import com.redmoon2333.template.PromptTemplateRegistry;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.SystemMessage;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
-import org.springframework.beans.factory.annotation.Value;
 
 import java.util.List;
 import java.util.Map;
@@ -25,6 +22,9 @@ import java.util.Map;
 @RestController
 public class PromptTemplateController
 {
+    // 固定的系统提示词放在请求最前面，逐字节不变才能命中 DashScope 上下文缓存
+    private static final String JAVA_ASSISTANT_SYSTEM = "你是一个Java编程助手，拒绝回答非技术问题。";
+
     @Resource(name = "deepseek")
     private ChatModel deepseekChatModel;
     @Resource(name = "qwen")
@@ -35,19 +35,15 @@ public class PromptTemplateController
     @Resource(name = "qwenChatClient")
     private ChatClient qwenChatClient;
 
-    @Value("classpath:/prompttemplate/testtemplate.txt")
-    private org.springframework.core.io.Resource userTemplate;
+    // prompttemplate/ 下的模板启动时已预编译，按文件名取用
+    @Resource
+    private PromptTemplateRegistry promptTemplateRegistry;
 
     @GetMapping("/prompttemplate/chat")
     public Flux<String> chat(String topic, String output_format, String wordCount)
     {
-        PromptTemplate promptTemplate = new PromptTemplate("" +
-                "讲一个关于{topic}的故事" +
-                "并以{output_format}格式输出，" +
-                "字数在{wordCount}左右");
-
-        // PromptTempate -> Prompt
-        Prompt prompt = promptTemplate.create(Map.of(
+        // prompttemplate/story.txt -> Prompt
+        Prompt prompt = promptTemplateRegistry.prompt("story", Map.of(
                 "topic", topic,
                 "output_format",output_format,
                 "wordCount",wordCount));
@@ -58,9 +54,7 @@ public class PromptTemplateController
     @GetMapping("/prompttemplate/chat2")
     public String chat2(String topic,String output_format)
     {
-        PromptTemplate promptTemplate = new PromptTemplate(userTemplate);
-
-        Prompt prompt = promptTemplate.create(Map.of("topic", topic, "output_format", output_format));
+        Prompt prompt = promptTemplateRegistry.prompt("testtemplate", Map.of("topic", topic, "output_format", output_format));
 
         return deepseekChatClient.prompt(prompt).call().content();
     }
@@ -68,12 +62,10 @@ public class PromptTemplateController
     @GetMapping("/prompttemplate/chat3")
     public String chat3(String sysTopic, String userTopic)
     {
-        // 1.SystemPromptTemplate
-        SystemPromptTemplate systemPromptTemplate = new SystemPromptTemplate("你是{systemTopic}助手，只回答{systemTopic}其它无可奉告，以HTML格式的结果。");
-        Message sysMessage = systemPromptTemplate.createMessage(Map.of("systemTopic", sysTopic));
-        // 2.PromptTemplate
-        PromptTemplate userPromptTemplate = new PromptTemplate("解释一下{userTopic}");
-        Message userMessage = userPromptTemplate.createMessage(Map.of("userTopic", userTopic));
+        // 1.系统消息模板 prompttemplate/topic-system.txt
+        Message sysMessage = promptTemplateRegistry.systemMessage("topic-system", Map.of("systemTopic", sysTopic));
+        // 2.用户消息模板 prompttemplate/explain.txt
+        Message userMessage = promptTemplateRegistry.userMessage("explain", Map.of("userTopic", userTopic));
         // 3.组合【关键】 多个 Message -> Prompt
         Prompt prompt = new Prompt(List.of(sysMessage, userMessage));
         // 4.调用 LLM
@@ -83,15 +75,13 @@ public class PromptTemplateController
     @GetMapping("/prompttemplate/chat4")
     public String chat4(String question)
     {
-        //1 系统消息
-        SystemMessage systemMessage = new SystemMessage("你是一个Java编程助手，拒绝回答非技术问题。");
-        //2 用户消息
-        UserMessage userMessage = new UserMessage(question);
-        //3 系统消息+用户消息=完整提示词
-        //Prompt prompt = new Prompt(systemMessage, userMessage);
-        Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
-        //4 调用LLM
-        String result = deepseekChatModel.call(prompt).getResult().getOutput().getText();
+        //1 系统消息 + 2 用户消息 = 完整提示词，系统消息固定在最前
+        Prompt prompt = PromptAssembler.builder()
+                    .system(JAVA_ASSISTANT_SYSTEM)
+                    .user(question)
+                .build();
+        //4 调用LLM，经 ChatClient 调用才会经过 TokenBudgetAdvisor 的输入/输出预算
+        String result = deepseekChatClient.prompt(prompt).call().content();
         System.out.println(result);
         return result;
     }
@@ -99,9 +89,10 @@ public class PromptTemplateController
     @GetMapping("/prompttemplate/chat5")
     public Flux<String> chat5(String question)
     {
-        return deepseekChatClient.prompt()
-                .system("你是一个Java编程助手，拒绝回答非技术问题。")
-                .user(question)
+        return deepseekChatClient.prompt(PromptAssembler.builder()
+                            .system(JAVA_ASSISTANT_SYSTEM)
+                            .user(question)
+                        .build())
                 .stream()
                 .content();
     }
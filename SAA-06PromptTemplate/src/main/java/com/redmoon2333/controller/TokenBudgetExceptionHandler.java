@@ -0,0 +1,20 @@
+package com.redmoon2333.controller;
+
+import com.redmoon2333.token.TokenBudgetExceededException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 输入超出 token 预算统一返回 413，请求未发往模型
+ */
+@RestControllerAdvice
+public class TokenBudgetExceptionHandler
+{
+    @ExceptionHandler(TokenBudgetExceededException.class)
+    public ResponseEntity<String> exceeded(TokenBudgetExceededException e)
+    {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+    }
+}
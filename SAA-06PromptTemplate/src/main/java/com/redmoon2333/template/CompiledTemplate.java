@@ -0,0 +1,130 @@
+package com.redmoon2333.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的提示词模板
+ * <p>
+ * 构造时把 {@code {name}} 占位符切成 字面量/变量 交替的片段，渲染时只做一次拼接，不再解析模板、不创建 ST 对象。
+ * 占位符语法与 PromptTemplate 默认的 {} 分隔符一致；{@code \{} 转义为字面量 {。
+ * 渲染时缺少任一变量直接报错，与 PromptTemplate 的校验行为一致。
+ */
+public final class CompiledTemplate
+{
+    private final String name;
+    // literals.length == variables.length + 1，渲染顺序 literals[0] variables[0] literals[1] ...
+    private final String[] literals;
+    private final String[] variables;
+    private final Set<String> variableNames;
+    private final int literalLength;
+
+    public CompiledTemplate(String name, String template)
+    {
+        this.name = name;
+        List<String> literalList = new ArrayList<>();
+        List<String> variableList = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length())
+        {
+            char c = template.charAt(i);
+            if (c == '\\' && i + 1 < template.length() && template.charAt(i + 1) == '{')
+            {
+                literal.append('{');
+                i += 2;
+                continue;
+            }
+            if (c != '{')
+            {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            int end = template.indexOf('}', i + 1);
+            if (end < 0)
+            {
+                throw new IllegalArgumentException("模板 " + name + " 第 " + i + " 个字符处的 { 没有闭合");
+            }
+            String variable = template.substring(i + 1, end).trim();
+            if (!isIdentifier(variable))
+            {
+                throw new IllegalArgumentException("模板 " + name + " 中的占位符名称不合法: {" + variable + "}");
+            }
+            literalList.add(literal.toString());
+            literal.setLength(0);
+            variableList.add(variable);
+            i = end + 1;
+        }
+        literalList.add(literal.toString());
+
+        this.literals = literalList.toArray(new String[0]);
+        this.variables = variableList.toArray(new String[0]);
+        this.variableNames = Collections.unmodifiableSet(new LinkedHashSet<>(variableList));
+        int length = 0;
+        for (String part : literals)
+        {
+            length += part.length();
+        }
+        this.literalLength = length;
+    }
+
+    public String render(Map<String, ?> model)
+    {
+        StringBuilder out = new StringBuilder(literalLength + variables.length * 16);
+        out.append(literals[0]);
+        for (int i = 0; i < variables.length; i++)
+        {
+            Object value = model.get(variables[i]);
+            if (value == null)
+            {
+                throw new IllegalStateException("模板 " + name + " 缺少变量: " + missing(model));
+            }
+            out.append(value).append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Set<String> getVariableNames()
+    {
+        return variableNames;
+    }
+
+    private Set<String> missing(Map<String, ?> model)
+    {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String variable : variableNames)
+        {
+            if (model.get(variable) == null)
+            {
+                missing.add(variable);
+            }
+        }
+        return missing;
+    }
+
+    private static boolean isIdentifier(String value)
+    {
+        if (value.isEmpty() || !Character.isJavaIdentifierStart(value.charAt(0)))
+        {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++)
+        {
+            if (!Character.isJavaIdentifierPart(value.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package com.redmoon2333.template;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 提示词模板注册表：启动时加载 prompttemplate/ 下的全部模板并预编译，之后按名称（文件名去掉扩展名）渲染
+ * <p>
+ * 模板语法错误在启动时就失败，不会等到第一次请求；注册完成后只读，可并发使用。
+ */
+public class PromptTemplateRegistry
+{
+    private static final Logger log = LoggerFactory.getLogger(PromptTemplateRegistry.class);
+
+    private final Map<String, CompiledTemplate> templates;
+
+    public PromptTemplateRegistry(String locationPattern)
+    {
+        Map<String, CompiledTemplate> loaded = new HashMap<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(locationPattern))
+            {
+                String name = StringUtils.stripFilenameExtension(resource.getFilename());
+                String content = resource.getContentAsString(StandardCharsets.UTF_8);
+                if (loaded.put(name, new CompiledTemplate(name, content)) != null)
+                {
+                    throw new IllegalStateException("提示词模板重名: " + name);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载提示词模板失败: " + locationPattern, e);
+        }
+        this.templates = Map.copyOf(loaded);
+        log.info("已加载提示词模板 {} 个: {}", templates.size(), templates.keySet());
+    }
+
+    public String render(String name, Map<String, ?> model)
+    {
+        return get(name).render(model);
+    }
+
+    public Prompt prompt(String name, Map<String, ?> model)
+    {
+        return new Prompt(userMessage(name, model));
+    }
+
+    public UserMessage userMessage(String name, Map<String, ?> model)
+    {
+        return new UserMessage(render(name, model));
+    }
+
+    public SystemMessage systemMessage(String name, Map<String, ?> model)
+    {
+        return new SystemMessage(render(name, model));
+    }
+
+    public Set<String> variables(String name)
+    {
+        return get(name).getVariableNames();
+    }
+
+    public Set<String> names()
+    {
+        return templates.keySet();
+    }
+
+    private CompiledTemplate get(String name)
+    {
+        CompiledTemplate template = templates.get(name);
+        if (template == null)
+        {
+            throw new IllegalArgumentException("提示词模板不存在: " + name);
+        }
+        return template;
+    }
+}
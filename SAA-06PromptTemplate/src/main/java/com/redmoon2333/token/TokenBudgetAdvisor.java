@@ -0,0 +1,238 @@
+package com.redmoon2333.token;
+
+import com.redmoon2333.prompt.PromptCacheUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 请求前的 token 预算检查
+ * <ul>
+ *     <li>按接口（请求映射的路径模板）取预算，未配置的接口使用默认预算</li>
+ *     <li>输入超出 maxInput：TRUNCATE 模式截断最后一条用户消息的尾部，系统消息和历史不动；截断后仍超出或 REJECT 模式直接拒绝</li>
+ *     <li>输出上限：请求未指定 maxTokens 或大于 maxOutput 时改为 maxOutput，options 类型没有 maxTokens 属性时报错</li>
+ *     <li>校准：用 DashScope 返回的 prompt tokens 与本地估算值修正 TokenizerService 的换算系数</li>
+ *     <li>指标：chat.prompt.tokens（本地估算）、chat.completion.tokens 和 chat.prompt.cache.tokens（DashScope 返回的 usage）、chat.prompt.truncated / rejected</li>
+ * </ul>
+ * 需要排在记忆、RAG 等会往 prompt 里追加内容的 advisor 之后，才能按最终发给模型的消息计数。
+ */
+@Slf4j
+public class TokenBudgetAdvisor implements CallAdvisor, StreamAdvisor
+{
+    public enum Mode
+    {
+        TRUNCATE, REJECT
+    }
+
+    public record Budget(int maxInput, int maxOutput, Mode mode)
+    {
+    }
+
+    private final TokenizerService tokenizer;
+    private final Budget defaultBudget;
+    private final Map<String, Budget> endpointBudgets;
+    private final MeterRegistry registry;
+    private final int order;
+
+    public TokenBudgetAdvisor(TokenizerService tokenizer, Budget defaultBudget, Map<String, Budget> endpointBudgets,
+                              MeterRegistry registry, int order)
+    {
+        this.tokenizer = tokenizer;
+        this.defaultBudget = defaultBudget;
+        this.endpointBudgets = Map.copyOf(endpointBudgets);
+        this.registry = registry;
+        this.order = order;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain)
+    {
+        String endpoint = currentEndpoint();
+        Checked checked = preflight(request, endpoint);
+        ChatClientResponse response = chain.nextCall(checked.request());
+        recordCompletion(endpoint, checked, response.chatResponse());
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain)
+    {
+        String endpoint = currentEndpoint();
+        return Flux.defer(() -> {
+            AtomicReference<ChatResponse> last = new AtomicReference<>();
+            Checked checked = preflight(request, endpoint);
+            return chain.nextStream(checked.request())
+                    .doOnNext(response -> {
+                        if (response.chatResponse() != null)
+                        {
+                            last.set(response.chatResponse());
+                        }
+                    })
+                    .doOnComplete(() -> recordCompletion(endpoint, checked, last.get()));
+        });
+    }
+
+    @Override
+    public String getName()
+    {
+        return "TokenBudgetAdvisor";
+    }
+
+    @Override
+    public int getOrder()
+    {
+        return order;
+    }
+
+    /**
+     * 预算检查后的请求，按最终消息估算的 prompt token 数，以及估算时的分词系数
+     */
+    private record Checked(ChatClientRequest request, int estimatedTokens, double ratio)
+    {
+    }
+
+    private Checked preflight(ChatClientRequest request, String endpoint)
+    {
+        Budget budget = endpointBudgets.getOrDefault(endpoint, defaultBudget);
+        Prompt prompt = request.prompt();
+        List<Message> messages = prompt.getInstructions();
+        double ratio = tokenizer.getRatio();
+        int tokens = tokenizer.count(messages);
+
+        if (tokens > budget.maxInput())
+        {
+            messages = truncate(messages, tokens - budget.maxInput(), budget, endpoint, tokens);
+            tokens = tokenizer.count(messages);
+            Counter.builder("chat.prompt.truncated").tag("endpoint", endpoint).register(registry).increment();
+            log.info("接口 {} 输入超出预算，已截断用户消息，剩余约 {} tokens", endpoint, tokens);
+        }
+        DistributionSummary.builder("chat.prompt.tokens").tag("endpoint", endpoint).baseUnit("tokens")
+                .register(registry).record(tokens);
+
+        ChatOptions options = limitOutput(prompt.getOptions(), budget.maxOutput());
+        return new Checked(request.mutate().prompt(new Prompt(messages, options)).build(), tokens, ratio);
+    }
+
+    /**
+     * 从最后一条用户消息尾部砍掉 excess 个 token
+     */
+    private List<Message> truncate(List<Message> messages, int excess, Budget budget, String endpoint, int tokens)
+    {
+        int index = -1;
+        for (int i = messages.size() - 1; i >= 0; i--)
+        {
+            if (messages.get(i) instanceof UserMessage)
+            {
+                index = i;
+                break;
+            }
+        }
+        if (budget.mode() == Mode.REJECT || index < 0)
+        {
+            throw reject(endpoint, tokens, budget);
+        }
+
+        UserMessage user = (UserMessage) messages.get(index);
+        int keep = tokenizer.count(user.getText()) - excess;
+        if (keep <= 0)
+        {
+            throw reject(endpoint, tokens, budget);
+        }
+        List<Message> truncated = new ArrayList<>(messages);
+        truncated.set(index, UserMessage.builder()
+                .text(tokenizer.truncate(user.getText(), keep))
+                .media(user.getMedia())
+                .metadata(user.getMetadata())
+                .build());
+        return truncated;
+    }
+
+    private TokenBudgetExceededException reject(String endpoint, int tokens, Budget budget)
+    {
+        Counter.builder("chat.prompt.rejected").tag("endpoint", endpoint).register(registry).increment();
+        return new TokenBudgetExceededException(endpoint, tokens, budget.maxInput());
+    }
+
+    private static ChatOptions limitOutput(ChatOptions options, int maxOutput)
+    {
+        if (options == null)
+        {
+            return ChatOptions.builder().maxTokens(maxOutput).build();
+        }
+        if (options.getMaxTokens() != null && options.getMaxTokens() <= maxOutput)
+        {
+            return options;
+        }
+        // 按属性写入，DashScopeChatOptions、DefaultToolCallingChatOptions 等所有带 maxTokens setter 的实现都能覆盖，
+        // 没有 setter 的实现直接报错，不允许悄悄绕过输出上限
+        ChatOptions copy = options.copy();
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(copy);
+        if (!wrapper.isWritableProperty("maxTokens"))
+        {
+            throw new IllegalStateException("无法为 " + copy.getClass().getName() + " 设置 maxTokens，输出 token 上限不能生效");
+        }
+        wrapper.setPropertyValue("maxTokens", maxOutput);
+        return copy;
+    }
+
+    private void recordCompletion(String endpoint, Checked checked, ChatResponse response)
+    {
+        if (response == null || response.getMetadata() == null)
+        {
+            return;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        if (usage != null && usage.getPromptTokens() != null && usage.getPromptTokens() > 0)
+        {
+            tokenizer.calibrate(checked.estimatedTokens(), checked.ratio(), usage.getPromptTokens());
+        }
+        if (usage != null && usage.getCompletionTokens() != null)
+        {
+            DistributionSummary.builder("chat.completion.tokens").tag("endpoint", endpoint).baseUnit("tokens")
+                    .register(registry).record(usage.getCompletionTokens());
+        }
+        PromptCacheUsage.Split split = PromptCacheUsage.record(registry, Tags.of("endpoint", endpoint), usage);
+        if (split != null)
+        {
+            log.debug("接口 {} prompt tokens {}，命中缓存 {}", endpoint, split.promptTokens(),
+                    split.cacheReported() ? split.cachedTokens() : "unknown");
+        }
+    }
+
+    private static String currentEndpoint()
+    {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)
+        {
+            HttpServletRequest request = attributes.getRequest();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            return pattern != null ? pattern.toString() : request.getRequestURI();
+        }
+        return "none";
+    }
+}
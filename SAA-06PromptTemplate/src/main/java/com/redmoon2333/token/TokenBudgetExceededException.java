@@ -0,0 +1,22 @@
+package com.redmoon2333.token;
+
+import lombok.Getter;
+
+/**
+ * 请求前预算检查未通过：输入 token 超出接口预算，请求没有发到 DashScope
+ */
+@Getter
+public class TokenBudgetExceededException extends RuntimeException
+{
+    private final String endpoint;
+    private final int tokens;
+    private final int limit;
+
+    public TokenBudgetExceededException(String endpoint, int tokens, int limit)
+    {
+        super("输入约 " + tokens + " tokens，超出接口 " + endpoint + " 的预算 " + limit);
+        this.endpoint = endpoint;
+        this.tokens = tokens;
+        this.limit = limit;
+    }
+}
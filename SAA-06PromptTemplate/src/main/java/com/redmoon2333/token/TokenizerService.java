@@ -0,0 +1,178 @@
+package com.redmoon2333.token;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地分词计数
+ * <p>
+ * 使用 jtokkit 的 BPE 编码（默认 cl100k_base）。qwen 词表与其同为字节级 BPE，但中文合并方式不同，
+ * 两者的比值随语料变化，没有固定常数可用：ratio 只是初始值，每次调用结束后由 {@link #calibrate(int, double, int)}
+ * 用 DashScope 返回的 prompt tokens 做指数滑动平均修正。这里只用于请求前的预算控制，计费仍以 usage 为准。
+ * <ul>
+ *     <li>收到第一个 usage 之前的估算不可信，按 max(ratio, uncalibratedRatio) 从严估算，宁可多截断也不超预算；
+ *         第一个样本直接采用实测系数，之后再做滑动平均</li>
+ *     <li>实测系数超出 [MIN_RATIO, MAX_RATIO] 说明编码器与模型词表严重不匹配（或 encoding 配错），
+ *         仍按边界值参与校准，但计数并告警，不被截断悄悄掩盖</li>
+ * </ul>
+ * <p>
+ * 系统提示词、模板片段会反复出现，不超过 cacheMaxChars 的文本按原文缓存编码器计数，读取时再乘当前系数。
+ */
+@Slf4j
+public class TokenizerService
+{
+    // ChatML 每条消息的 <|im_start|>role\n ... <|im_end|>\n 开销，以及回复前缀
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int REPLY_PRIMING_TOKENS = 3;
+    // 校准的平滑系数与取值范围，单次异常的 usage 不会把系数拉偏太多
+    private static final double CALIBRATION_ALPHA = 0.1;
+    private static final double MIN_RATIO = 0.5;
+    private static final double MAX_RATIO = 3.0;
+
+    private final Encoding encoding;
+    private volatile double ratio;
+    private final double uncalibratedRatio;
+    private volatile boolean calibrated;
+    private final AtomicLong outOfRangeSamples = new AtomicLong();
+    private final int cacheMaxChars;
+    private final LRUCache<String, Integer> cache;
+
+    /**
+     * @param ratio             编码器 token 数换算到模型 token 数的初始系数
+     * @param uncalibratedRatio 还没有实测样本时使用的下限系数，取偏大的值
+     */
+    public TokenizerService(String encodingName, double ratio, double uncalibratedRatio, int cacheSize, int cacheMaxChars)
+    {
+        EncodingType type = EncodingType.fromName(encodingName)
+                .orElseThrow(() -> new IllegalArgumentException("不支持的编码: " + encodingName));
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(type);
+        this.ratio = clamp(ratio);
+        this.uncalibratedRatio = clamp(uncalibratedRatio);
+        this.cacheMaxChars = cacheMaxChars;
+        this.cache = CacheUtil.newLRUCache(cacheSize);
+    }
+
+    public int count(String text)
+    {
+        if (text == null || text.isEmpty())
+        {
+            return 0;
+        }
+        if (text.length() > cacheMaxChars)
+        {
+            return scale(encoding.countTokens(text));
+        }
+        Integer cached = cache.get(text, false);
+        if (cached == null)
+        {
+            cached = encoding.countTokens(text);
+            cache.put(text, cached);
+        }
+        return scale(cached);
+    }
+
+    public int count(Message message)
+    {
+        return count(message.getText()) + TOKENS_PER_MESSAGE;
+    }
+
+    public int count(List<Message> messages)
+    {
+        int tokens = REPLY_PRIMING_TOKENS;
+        for (Message message : messages)
+        {
+            tokens += count(message);
+        }
+        return tokens;
+    }
+
+    /**
+     * 保留开头不超过 maxTokens 个 token 的内容
+     */
+    public String truncate(String text, int maxTokens)
+    {
+        if (text == null || maxTokens <= 0)
+        {
+            return "";
+        }
+        if (count(text) <= maxTokens)
+        {
+            return text;
+        }
+        // 校准系数换算回编码器的 token 数
+        int encoderTokens = (int) Math.floor(maxTokens / getRatio());
+        IntArrayList tokens = encoding.encode(text, encoderTokens).getTokens();
+        // 截断点可能落在多字节字符中间，去掉解码出的替换字符
+        return encoding.decode(tokens).replace("�", "");
+    }
+
+    /**
+     * 用一次调用的实际 prompt tokens 修正校准系数
+     *
+     * @param estimated     请求前估算的 token 数
+     * @param estimateRatio 估算时使用的系数（{@link #getRatio()}），并发请求估算时的系数可能不同
+     * @param actual        DashScope usage 中的 promptTokens
+     */
+    public synchronized void calibrate(int estimated, double estimateRatio, int actual)
+    {
+        if (estimated <= 0 || actual <= 0)
+        {
+            return;
+        }
+        double raw = estimateRatio * actual / estimated;
+        double observed = clamp(raw);
+        if (observed != raw && outOfRangeSamples.getAndIncrement() == 0)
+        {
+            log.warn("实测分词系数 {} 超出 [{}, {}]，请检查 token.tokenizer.encoding 是否与模型词表匹配，"
+                    + "后续超出只计入 chat.tokenizer.out-of-range", String.format("%.2f", raw), MIN_RATIO, MAX_RATIO);
+        }
+        if (!calibrated)
+        {
+            ratio = observed;
+            calibrated = true;
+            log.info("分词系数首次校准为 {}", String.format("%.2f", observed));
+            return;
+        }
+        ratio = ratio + CALIBRATION_ALPHA * (observed - ratio);
+    }
+
+    /**
+     * 当前用于估算的系数，未校准前不低于 uncalibratedRatio
+     */
+    public double getRatio()
+    {
+        return calibrated ? ratio : Math.max(ratio, uncalibratedRatio);
+    }
+
+    public boolean isCalibrated()
+    {
+        return calibrated;
+    }
+
+    /**
+     * 实测系数超出取值范围的次数
+     */
+    public long getOutOfRangeSamples()
+    {
+        return outOfRangeSamples.get();
+    }
+
+    private static double clamp(double ratio)
+    {
+        return Math.max(MIN_RATIO, Math.min(MAX_RATIO, ratio));
+    }
+
+    private int scale(int tokens)
+    {
+        return (int) Math.ceil(tokens * getRatio());
+    }
+}
@@ -0,0 +1,85 @@
+package com.redmoon2333.template;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次请求 new PromptTemplate 渲染与预编译模板（CompiledTemplate / PromptTemplateRegistry）的对比
+ * <p>
+ * 模板直接取 prompttemplate/ 下的文件，变量与 Controller 里传入的一致。
+ * 运行：在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动 org.openjdk.jmh.Main（加 -prof gc）。
+ * main 默认挂 GC profiler，除耗时外看 gc.alloc.rate.norm（每次调用分配的字节数），缓存省下的主要是分配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptTemplateBenchmark
+{
+    @Param({"story", "topic-system"})
+    private String name;
+
+    private String template;
+    private Map<String, Object> model;
+    private CompiledTemplate compiled;
+    private PromptTemplateRegistry registry;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        template = new ClassPathResource("prompttemplate/" + name + ".txt").getContentAsString(StandardCharsets.UTF_8);
+        model = "story".equals(name)
+                ? Map.of("topic", "java", "output_format", "html", "wordCount", 200)
+                : Map.of("systemTopic", "法律");
+        compiled = new CompiledTemplate(name, template);
+        registry = new PromptTemplateRegistry("classpath*:prompttemplate/*.txt");
+    }
+
+    @Benchmark
+    public String perRequestPromptTemplate()
+    {
+        return new PromptTemplate(template).render(model);
+    }
+
+    @Benchmark
+    public String compiledTemplate()
+    {
+        return compiled.render(model);
+    }
+
+    @Benchmark
+    public String registry()
+    {
+        return registry.render(name, model);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(PromptTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
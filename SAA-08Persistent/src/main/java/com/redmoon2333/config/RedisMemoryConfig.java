@@ -1,10 +1,21 @@
 package com.redmoon2333.config;
 
-import com.alibaba.cloud.ai.memory.redis.RedisChatMemoryRepository;
+import com.redmoon2333.memory.AppendOnlyChatMemory;
+import com.redmoon2333.memory.AppendOnlyRedisChatMemoryRepository;
+import com.redmoon2333.memory.SummarizingChatMemory;
+import com.redmoon2333.memory.WriteBehindChatMemory;
+import com.redmoon2333.memory.codec.CompactMessageCodec;
+import com.redmoon2333.memory.codec.JsonMessageCodec;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
 
 @Configuration
 public class RedisMemoryConfig
@@ -13,13 +24,97 @@ public class RedisMemoryConfig
     private String host;
     @Value("${spring.data.redis.port}")
     private int port;
+    // 多个节点时按 userId 一致性哈希分片，例如 10.0.0.1:6379,10.0.0.2:6379；不配置则只用上面的单节点
+    @Value("${chat.memory.redis.nodes:}")
+    private List<String> nodes;
+    // 会话闲置过期时间，读写都会刷新
+    @Value("${chat.memory.ttl-seconds:604800}")
+    private long ttlSeconds;
+    // 每个用户的会话数、字节数上限，超出时淘汰最久未访问的会话
+    @Value("${chat.memory.quota.max-conversations:50}")
+    private int maxConversationsPerUser;
+    @Value("${chat.memory.quota.max-bytes:1048576}")
+    private long maxBytesPerUser;
+    // 记忆模式：window 固定条数窗口；summary 按 token 预算 + 滚动摘要
+    @Value("${chat.memory.mode:window}")
+    private String mode;
+    // 会话窗口大小，原先写在 MessageWindowChatMemory.maxMessages(10)
+    @Value("${chat.memory.max-messages:10}")
+    private int maxMessages;
+    // summary 模式下的 token 预算，以及防止摘要长期失败时 List 无限增长的条数上限
+    @Value("${chat.memory.summary.token-budget:2000}")
+    private int tokenBudget;
+    @Value("${chat.memory.summary.max-messages:200}")
+    private int summaryMaxMessages;
+    @Value("${chat.memory.summary.max-chars:300}")
+    private int summaryMaxChars;
+    // 消息编码：json（默认）与 RedisChatMemoryRepository 兼容；compact 需显式开启，为二进制+压缩，仍能读取旧的 JSON 数据，
+    // 但写入的数据不能再被 RedisChatMemoryRepository 或旧版本读取，属于单向格式变更
+    @Value("${chat.memory.codec:json}")
+    private String codec;
+    // 写入模式：sync 同步写；async 异步写；async_ack 异步写，下一轮读取前确认已落库
+    @Value("${chat.memory.write.mode:sync}")
+    private String writeMode;
+    @Value("${chat.memory.write.max-pending:100}")
+    private int maxPending;
+    @Value("${chat.memory.write.coalesce-millis:50}")
+    private long coalesceMillis;
+    @Value("${chat.memory.write.flush-threads:4}")
+    private int flushThreads;
 
-    @Bean
-    public RedisChatMemoryRepository redisChatMemoryRepository()
+    /**
+     * 追加写仓库：每轮只 RPUSH 新消息 + LTRIM 裁剪，替代 RedisChatMemoryRepository 的全量重写
+     */
+    @Bean(destroyMethod = "close")
+    @Primary
+    public AppendOnlyRedisChatMemoryRepository appendOnlyRedisChatMemoryRepository()
     {
-        return RedisChatMemoryRepository.builder()
+        return AppendOnlyRedisChatMemoryRepository.builder()
                     .host(host)
                     .port(port)
+                    .nodes(nodes)
+                    .ttlSeconds(ttlSeconds)
+                    .maxConversationsPerUser(maxConversationsPerUser)
+                    .maxBytesPerUser(maxBytesPerUser)
+                    .maxMessages(isSummaryMode() ? summaryMaxMessages : maxMessages)
+                    .codec("compact".equalsIgnoreCase(codec) ? new CompactMessageCodec() : new JsonMessageCodec())
                 .build();
     }
+
+    /**
+     * 摘要任务专用线程池，不占用请求线程
+     */
+    @Bean(name = "chatMemorySummaryExecutor")
+    public ThreadPoolTaskExecutor chatMemorySummaryExecutor()
+    {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("chat-summary-");
+        return executor;
+    }
+
+    @Bean
+    public ChatMemory chatMemory(AppendOnlyRedisChatMemoryRepository appendOnlyRedisChatMemoryRepository,
+                                 @Qualifier("qwen") ChatModel qwen,
+                                 @Qualifier("chatMemorySummaryExecutor") ThreadPoolTaskExecutor chatMemorySummaryExecutor)
+    {
+        ChatMemory chatMemory = isSummaryMode()
+                ? new SummarizingChatMemory(appendOnlyRedisChatMemoryRepository, qwen,
+                        chatMemorySummaryExecutor, tokenBudget, summaryMaxChars)
+                : new AppendOnlyChatMemory(appendOnlyRedisChatMemoryRepository);
+
+        WriteBehindChatMemory.Durability durability = WriteBehindChatMemory.Durability.valueOf(writeMode.toUpperCase());
+        if (durability == WriteBehindChatMemory.Durability.SYNC)
+        {
+            return chatMemory;
+        }
+        return new WriteBehindChatMemory(chatMemory, durability, maxPending, coalesceMillis, flushThreads);
+    }
+
+    private boolean isSummaryMode()
+    {
+        return "summary".equalsIgnoreCase(mode);
+    }
 }
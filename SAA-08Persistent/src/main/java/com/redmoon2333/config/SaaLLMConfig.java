@@ -3,11 +3,10 @@ package com.redmoon2333.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
-import com.alibaba.cloud.ai.memory.redis.RedisChatMemoryRepository;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -22,12 +21,10 @@ public class SaaLLMConfig
     private final String QWEN_MODEL = "qwen-plus";
 
     @Bean(name = "deepseek")
-    public ChatModel deepSeek()
+    public ChatModel deepSeek(DashScopeApi dashScopeApi)
     {
         return DashScopeChatModel.builder()
-                        .dashScopeApi(DashScopeApi.builder()
-                                    .apiKey(System.getenv("aliQwen_api"))
-                                .build())
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build()
                 )
@@ -35,11 +32,9 @@ public class SaaLLMConfig
     }
 
     @Bean(name = "qwen")
-    public ChatModel qwen()
+    public ChatModel qwen(DashScopeApi dashScopeApi)
     {
-        return DashScopeChatModel.builder().dashScopeApi(DashScopeApi.builder()
-                        .apiKey(System.getenv("aliQwen_api"))
-                        .build())
+        return DashScopeChatModel.builder().dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder()
                                 .withModel(QWEN_MODEL)
@@ -50,21 +45,31 @@ public class SaaLLMConfig
 
     @Bean(name = "qwenChatClient")
     public ChatClient qwenChatClient(@Qualifier("qwen") ChatModel qwen,
-                                     RedisChatMemoryRepository redisChatMemoryRepository)
+                                     ChatMemory chatMemory)
     {
-        MessageWindowChatMemory windowChatMemory = MessageWindowChatMemory.builder()
-                            .chatMemoryRepository(redisChatMemoryRepository)
-                            .maxMessages(10)
-                        .build();
-
+        // 窗口大小由 RedisMemoryConfig 中的追加写仓库负责裁剪
         return ChatClient.builder(qwen)
                     .defaultOptions(ChatOptions.builder().model(QWEN_MODEL).build())
-                    .defaultAdvisors(MessageChatMemoryAdvisor.builder(windowChatMemory).build())
+                    .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
                 .build();
     }
 
 
 
+    /**
+     * 流式对话专用：不挂 MessageChatMemoryAdvisor，由 ChatMemory4RedisController 在流结束时统一写记忆，
+     * 避免默认 advisor 在客户端取消时只留下用户消息
+     * @param qwen
+     * @return
+     */
+    @Bean(name = "qwenStreamChatClient")
+    public ChatClient qwenStreamChatClient(@Qualifier("qwen") ChatModel qwen)
+    {
+        return ChatClient.builder(qwen)
+                    .defaultOptions(ChatOptions.builder().model(QWEN_MODEL).build())
+                .build();
+    }
+
     /**
      * 家庭作业，按照上述模范qwen完成基于deepseek的模型存储
      * @param deepSeek
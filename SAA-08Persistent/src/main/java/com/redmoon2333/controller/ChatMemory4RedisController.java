@@ -1,18 +1,38 @@
 package com.redmoon2333.controller;
 
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.web.bind.annotation.GetMapping;
 import static org.springframework.ai.chat.memory.ChatMemory.CONVERSATION_ID;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+@Slf4j
 @RestController
 public class ChatMemory4RedisController
 {
     @Resource(name = "qwenChatClient")
     private ChatClient qwenChatClient;
+    @Resource(name = "qwenStreamChatClient")
+    private ChatClient qwenStreamChatClient;
+    @Resource
+    private ChatMemory chatMemory;
+
     @GetMapping("/chatmemory/chat")
     public String chat(String msg, String userId)
     {
@@ -33,4 +53,57 @@ public class ChatMemory4RedisController
                 .content();
 
     }
+
+    /**
+     * 流式版本，记忆语义与 /chatmemory/chat 相同（userId 即 CONVERSATION_ID）
+     * 1. 订阅时读取历史，拼上本轮用户消息发给模型
+     * 2. 边输出边聚合 token，流结束时把 用户消息+完整回答 一次性写入记忆，写完才向客户端发完成信号，
+     *    客户端收到结束后立即发起的下一轮一定能读到本轮
+     * 3. 客户端中途取消：保存已经输出给用户的部分回答（标记 interrupted），一个 token 都没输出则不保存本轮；
+     *    模型报错：不保存本轮，历史保持原样
+     */
+    @GetMapping("/chatmemory/streamchat")
+    public Flux<String> streamChat(String msg, String userId)
+    {
+        return Flux.defer(() -> {
+            UserMessage userMessage = new UserMessage(msg);
+            List<Message> messages = new ArrayList<>(chatMemory.get(userId));
+            messages.add(userMessage);
+
+            StringBuffer answer = new StringBuffer();
+            AtomicBoolean persisted = new AtomicBoolean(false);
+
+            return qwenStreamChatClient
+                    .prompt(new Prompt(messages))
+                    .stream()
+                    .content()
+                    .doOnNext(answer::append)
+                    .concatWith(Mono.defer(() -> persisted.compareAndSet(false, true)
+                            ? persist(userId, List.of(userMessage, new AssistantMessage(answer.toString())))
+                            : Mono.empty()))
+                    .doOnCancel(() -> {
+                        if (answer.isEmpty() || !persisted.compareAndSet(false, true))
+                        {
+                            return;
+                        }
+                        // 客户端已经断开，没有人等待结果，后台写入即可
+                        persist(userId, List.of(userMessage,
+                                new AssistantMessage(answer.toString(), Map.of("interrupted", true)))).subscribe();
+                    });
+        });
+    }
+
+    /**
+     * 同步的 Redis 写入放到 boundedElastic 上执行，不阻塞事件循环；写入开始后不随订阅取消而中断
+     */
+    private Mono<String> persist(String userId, List<Message> turn)
+    {
+        return Mono.fromFuture(() -> CompletableFuture.runAsync(() -> chatMemory.add(userId, turn),
+                        Schedulers.boundedElastic()::schedule), true)
+                .onErrorResume(e -> {
+                    log.warn("会话 {} 写入记忆失败: {}", userId, e.getMessage());
+                    return Mono.empty();
+                })
+                .then(Mono.empty());
+    }
 }
@@ -0,0 +1,40 @@
+package com.redmoon2333.memory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 基于 AppendOnlyRedisChatMemoryRepository 的窗口记忆
+ * <p>
+ * 与 MessageWindowChatMemory 的区别：add 时不再"读全量 -> 合并 -> 写全量"，
+ * 只把新消息追加到 Redis，窗口裁剪交给仓库的 Lua 脚本完成。
+ */
+public class AppendOnlyChatMemory implements ChatMemory
+{
+    private final AppendOnlyRedisChatMemoryRepository repository;
+
+    public AppendOnlyChatMemory(AppendOnlyRedisChatMemoryRepository repository)
+    {
+        this.repository = repository;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages)
+    {
+        repository.append(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId)
+    {
+        return repository.findByConversationId(conversationId);
+    }
+
+    @Override
+    public void clear(String conversationId)
+    {
+        repository.deleteByConversationId(conversationId);
+    }
+}
@@ -0,0 +1,719 @@
+package com.redmoon2333.memory;
+
+import cn.hutool.core.lang.ConsistentHash;
+import com.redmoon2333.memory.codec.JsonMessageCodec;
+import com.redmoon2333.memory.codec.MessageCodec;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 追加写的Redis会话记忆仓库
+ * <p>
+ * MessageWindowChatMemory 每轮都会 saveAll 整个窗口（DEL + 全量RPUSH），写入成本随历史长度增长。
+ * 这里每轮只 RPUSH 新消息，再用 LTRIM 裁剪到窗口大小，两步放在同一个 Lua 脚本里一次往返原子完成，
+ * 单轮写入成本为 O(新消息数)。
+ * <p>
+ * key 前缀、List 结构与 spring-ai-alibaba 的 RedisChatMemoryRepository 保持一致，可以直接读取已有会话。
+ * 消息编码由 {@link MessageCodec} 决定，默认 JSON，可换成 CompactMessageCodec 节省内存和带宽。
+ * <p>
+ * 会话生命周期：
+ * <ul>
+ *     <li>TTL：读写都会刷新过期时间，闲置会话自动过期</li>
+ *     <li>配额：每个用户的会话数、字节数有上限，超出时淘汰最久未访问的会话</li>
+ *     <li>分片：按 userId 一致性哈希到多个 Redis 节点，同一用户的会话和索引落在同一节点，配额脚本可以原子执行</li>
+ * </ul>
+ * 所有 Lua 脚本只访问通过 KEYS 传入的 key，用户字节总数增量维护在字节HASH 中，淘汰其他会话拆成单独的脚本调用。
+ * 部署在 Redis Cluster 上时，conversationId 写成 "{userId}:xxx"，同一用户的所有 key 会落在同一个 slot。
+ * conversationId 形如 "userId:xxx" 时取冒号前的部分作为 userId，否则整个 conversationId 就是 userId。
+ */
+public class AppendOnlyRedisChatMemoryRepository implements ChatMemoryRepository, AutoCloseable
+{
+    public static final String DEFAULT_KEY_PREFIX = "spring_ai_alibaba_chat_memory:";
+    // 摘要单独存放，前缀不能以 DEFAULT_KEY_PREFIX 开头，避免被 findConversationIds 扫到
+    public static final String DEFAULT_SUMMARY_KEY_PREFIX = "spring_ai_alibaba_chat_summary:";
+    // 用户维度的索引：ZSET 会话ID -> 最近访问时间；HASH 会话ID -> 占用字节数；HASH 会话ID -> 消息 token 数
+    public static final String DEFAULT_USER_KEY_PREFIX = "spring_ai_alibaba_chat_user:";
+
+    // 用户字节HASH 中保存该用户所有会话字节总数的字段，conversationId 不会以冒号开头
+    private static final String TOTAL_BYTES_FIELD = "::total";
+
+    /*
+     * 脚本只访问 KEYS 中声明的 key；淘汰其他会话由 Java 侧逐个调用 DELETE_SCRIPT 完成
+     * KEYS[1] 会话List  KEYS[2] 会话摘要  KEYS[3] 用户会话ZSET  KEYS[4] 用户字节HASH  KEYS[5] 用户tokenHASH
+     * ARGV[1] 窗口大小  ARGV[2] TTL秒  ARGV[3] 当前毫秒  ARGV[4] 会话ID
+     * ARGV[5] 用户会话数上限  ARGV[6] 用户字节上限  ARGV[7] 总字节字段名
+     * ARGV[8] 新消息 token 数，-1 表示不统计  ARGV[9..] 新消息
+     * 返回 {追加后会话中的消息条数, 追加后会话 token 数（未知为 -1）, 是否超出配额}
+     */
+    private static final LuaScript APPEND_SCRIPT = new LuaScript("""
+            local conversationId = ARGV[4]
+            local totalField = ARGV[7]
+            local added = 0
+            for i = 9, #ARGV do
+                added = added + string.len(ARGV[i])
+            end
+            local len = redis.call('RPUSH', KEYS[1], unpack(ARGV, 9))
+            local addedTokens = tonumber(ARGV[8])
+            local tokens = -1
+            if addedTokens >= 0 then
+                if len == #ARGV - 8 then
+                    -- 新会话，计数从本批消息开始
+                    redis.call('HSET', KEYS[5], conversationId, addedTokens)
+                    tokens = addedTokens
+                elseif redis.call('HEXISTS', KEYS[5], conversationId) == 1 then
+                    tokens = redis.call('HINCRBY', KEYS[5], conversationId, addedTokens)
+                end
+            end
+            local removed = 0
+            local window = tonumber(ARGV[1])
+            if window > 0 and len > window then
+                for _, v in ipairs(redis.call('LRANGE', KEYS[1], 0, len - window - 1)) do
+                    removed = removed + string.len(v)
+                end
+                redis.call('LTRIM', KEYS[1], -window, -1)
+                len = window
+                -- 被裁掉的消息 token 数未知，计数作废，等摘要压缩时重新统计
+                redis.call('HDEL', KEYS[5], conversationId)
+                tokens = -1
+            end
+
+            -- 旧数据没有总字节字段时统计一次，之后随增删增量维护
+            if redis.call('HEXISTS', KEYS[4], totalField) == 0 then
+                local sum = 0
+                for _, b in ipairs(redis.call('HVALS', KEYS[4])) do
+                    sum = sum + tonumber(b)
+                end
+                redis.call('HSET', KEYS[4], totalField, sum)
+            end
+            redis.call('HINCRBY', KEYS[4], conversationId, added - removed)
+            local total = redis.call('HINCRBY', KEYS[4], totalField, added - removed)
+            redis.call('ZADD', KEYS[3], ARGV[3], conversationId)
+
+            local ttl = tonumber(ARGV[2])
+            if ttl > 0 then
+                for i = 1, 5 do
+                    redis.call('EXPIRE', KEYS[i], ttl)
+                end
+                -- 已经过期的会话从用户索引中清掉，它们的 List 和摘要已由 TTL 删除
+                local expireBefore = tonumber(ARGV[3]) - ttl * 1000
+                for _, stale in ipairs(redis.call('ZRANGEBYSCORE', KEYS[3], '-inf', '(' .. expireBefore)) do
+                    local bytes = redis.call('HGET', KEYS[4], stale)
+                    if bytes then
+                        total = redis.call('HINCRBY', KEYS[4], totalField, -tonumber(bytes))
+                    end
+                    redis.call('ZREM', KEYS[3], stale)
+                    redis.call('HDEL', KEYS[4], stale)
+                    redis.call('HDEL', KEYS[5], stale)
+                end
+            end
+
+            local maxConversations = tonumber(ARGV[5])
+            local maxBytes = tonumber(ARGV[6])
+            local over = (maxConversations > 0 and redis.call('ZCARD', KEYS[3]) > maxConversations)
+                    or (maxBytes > 0 and total > maxBytes)
+            return {len, tokens, over and 1 or 0}
+            """);
+
+    /*
+     * 删除一个会话，并从用户字节总数中扣除
+     * KEYS[1] 会话List  KEYS[2] 会话摘要  KEYS[3] 用户会话ZSET  KEYS[4] 用户字节HASH  KEYS[5] 用户tokenHASH
+     * ARGV[1] 会话ID  ARGV[2] 总字节字段名  ARGV[3] 1=连同摘要和索引一起删除，0=只清空消息
+     * ARGV[4] 用户会话数上限  ARGV[5] 用户字节上限
+     * 返回删除后是否仍超出配额
+     */
+    private static final LuaScript DELETE_SCRIPT = new LuaScript("""
+            local conversationId = ARGV[1]
+            local totalField = ARGV[2]
+            local bytes = redis.call('HGET', KEYS[4], conversationId)
+            if bytes and redis.call('HEXISTS', KEYS[4], totalField) == 1 then
+                redis.call('HINCRBY', KEYS[4], totalField, -tonumber(bytes))
+            end
+            redis.call('HDEL', KEYS[4], conversationId)
+            redis.call('HDEL', KEYS[5], conversationId)
+            redis.call('DEL', KEYS[1])
+            if ARGV[3] == '1' then
+                redis.call('DEL', KEYS[2])
+                redis.call('ZREM', KEYS[3], conversationId)
+            end
+            local maxConversations = tonumber(ARGV[4])
+            local maxBytes = tonumber(ARGV[5])
+            local total = tonumber(redis.call('HGET', KEYS[4], totalField) or '0')
+            local over = (maxConversations > 0 and redis.call('ZCARD', KEYS[3]) > maxConversations)
+                    or (maxBytes > 0 and total > maxBytes)
+            return over and 1 or 0
+            """);
+
+    /*
+     * 删除已压缩进摘要的旧消息，并重算会话 token 数
+     * 摘要期间 LTRIM 可能已经裁掉了头部，所以按内容核对：当前头部必须与快照中的旧消息逐条一致才删除，否则放弃本次删除并作废计数
+     * KEYS[1] 会话List  KEYS[2] 用户字节HASH  KEYS[3] 用户tokenHASH
+     * ARGV[1] 会话ID  ARGV[2] 快照时的 token 计数（未知为 -1）  ARGV[3] 快照中保留部分的 token 数  ARGV[4] 快照条数
+     * ARGV[5] 总字节字段名  ARGV[6..] 要删除的旧消息（快照头部）
+     * 返回删除条数，头部不一致时返回 -1
+     */
+    private static final LuaScript REMOVE_COMPACTED_SCRIPT = new LuaScript("""
+            local conversationId = ARGV[1]
+            local count = #ARGV - 5
+            if count > 0 then
+                local head = redis.call('LRANGE', KEYS[1], 0, count - 1)
+                for i = 1, count do
+                    if head[i] ~= ARGV[i + 5] then
+                        redis.call('HDEL', KEYS[3], conversationId)
+                        return -1
+                    end
+                end
+                local removed = 0
+                for _, v in ipairs(head) do
+                    removed = removed + string.len(v)
+                end
+                redis.call('LTRIM', KEYS[1], count, -1)
+                if redis.call('HEXISTS', KEYS[2], conversationId) == 1 then
+                    redis.call('HINCRBY', KEYS[2], conversationId, -removed)
+                    if redis.call('HEXISTS', KEYS[2], ARGV[5]) == 1 then
+                        redis.call('HINCRBY', KEYS[2], ARGV[5], -removed)
+                    end
+                end
+            end
+            -- 新计数 = 保留部分 + 快照之后追加的部分
+            local snapshotTokens = tonumber(ARGV[2])
+            local current = redis.call('HGET', KEYS[3], conversationId)
+            if snapshotTokens >= 0 and current then
+                redis.call('HSET', KEYS[3], conversationId, tonumber(ARGV[3]) + tonumber(current) - snapshotTokens)
+            elseif redis.call('LLEN', KEYS[1]) == tonumber(ARGV[4]) - count then
+                redis.call('HSET', KEYS[3], conversationId, ARGV[3])
+            else
+                redis.call('HDEL', KEYS[3], conversationId)
+            end
+            return count
+            """);
+
+    // 读取时只刷新已在索引中的会话的访问时间
+    private static final ZAddParams TOUCH_ONLY = ZAddParams.zAddParams().xx();
+
+    private final Map<String, JedisPool> jedisPools = new LinkedHashMap<>();
+    private final ConsistentHash<String> nodeRing;
+    private final MessageCodec codec;
+    private final String keyPrefix;
+    private final String summaryKeyPrefix;
+    private final String userKeyPrefix;
+    private final int maxMessages;
+    private final long ttlSeconds;
+    private final int maxConversationsPerUser;
+    private final long maxBytesPerUser;
+
+    private AppendOnlyRedisChatMemoryRepository(Builder builder)
+    {
+        List<String> nodes = builder.nodes.isEmpty() ? List.of(builder.host + ":" + builder.port) : builder.nodes;
+        for (String node : nodes)
+        {
+            int separator = node.lastIndexOf(':');
+            String host = node.substring(0, separator).trim();
+            int port = Integer.parseInt(node.substring(separator + 1).trim());
+            jedisPools.put(node, new JedisPool(builder.poolConfig, host, port, builder.timeout, builder.password));
+        }
+        this.nodeRing = new ConsistentHash<>(builder.virtualNodes, jedisPools.keySet());
+        this.codec = builder.codec;
+        this.keyPrefix = builder.keyPrefix;
+        this.summaryKeyPrefix = builder.summaryKeyPrefix;
+        this.userKeyPrefix = builder.userKeyPrefix;
+        this.maxMessages = builder.maxMessages;
+        this.ttlSeconds = builder.ttlSeconds;
+        this.maxConversationsPerUser = builder.maxConversationsPerUser;
+        this.maxBytesPerUser = builder.maxBytesPerUser;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    @Override
+    public List<String> findConversationIds()
+    {
+        List<String> conversationIds = new ArrayList<>();
+        ScanParams scanParams = new ScanParams().match(keyPrefix + "*").count(500);
+        for (JedisPool jedisPool : jedisPools.values())
+        {
+            try (Jedis jedis = jedisPool.getResource())
+            {
+                String cursor = ScanParams.SCAN_POINTER_START;
+                do {
+                    ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
+                    for (String key : scanResult.getResult())
+                    {
+                        conversationIds.add(key.substring(keyPrefix.length()));
+                    }
+                    cursor = scanResult.getCursor();
+                } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            }
+        }
+        return conversationIds;
+    }
+
+    /**
+     * 读取会话，同时刷新 TTL 和用户索引中的访问时间（同一次 pipeline）
+     */
+    @Override
+    public List<Message> findByConversationId(String conversationId)
+    {
+        String userId = userIdOf(conversationId);
+        Response<List<byte[]>> response;
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            Pipeline pipeline = jedis.pipelined();
+            response = pipeline.lrange(key(conversationId), 0, -1);
+            if (ttlSeconds > 0)
+            {
+                pipeline.expire(keyPrefix + conversationId, ttlSeconds);
+                pipeline.expire(summaryKeyPrefix + conversationId, ttlSeconds);
+                pipeline.zadd(userConversationsKey(userId), System.currentTimeMillis(), conversationId, TOUCH_ONLY);
+                pipeline.expire(userConversationsKey(userId), ttlSeconds);
+                pipeline.expire(userBytesKey(userId), ttlSeconds);
+                pipeline.expire(userTokensKey(userId), ttlSeconds);
+            }
+            pipeline.sync();
+        }
+
+        List<byte[]> values = response.get();
+        List<Message> messages = new ArrayList<>(values.size());
+        for (byte[] value : values)
+        {
+            messages.add(codec.decode(value));
+        }
+        return messages;
+    }
+
+    /**
+     * 全量覆盖：先清空再走追加脚本，字节统计、TTL、配额与 append 保持一致
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages)
+    {
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            delete(jedis, conversationId, false);
+            if (!messages.isEmpty())
+            {
+                appendInternal(jedis, conversationId, messages, -1);
+            }
+        }
+    }
+
+    /**
+     * 只追加本轮新增的消息，并裁剪到窗口大小
+     * @param conversationId 会话ID
+     * @param messages 本轮新增消息
+     * @return 追加后会话中的消息条数
+     */
+    public long append(String conversationId, List<Message> messages)
+    {
+        if (messages.isEmpty())
+        {
+            return 0;
+        }
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            return appendInternal(jedis, conversationId, messages, -1).get(0);
+        }
+    }
+
+    /**
+     * 追加消息并累加会话的 token 计数（与消息在同一个脚本里原子更新），不需要读回整个会话
+     * @param tokens 本轮新增消息的 token 数
+     * @return 追加后会话的 token 数；计数未知（旧数据、被窗口裁剪过）时返回 -1，由调用方触发重新统计
+     */
+    public long append(String conversationId, List<Message> messages, long tokens)
+    {
+        if (messages.isEmpty())
+        {
+            return -1;
+        }
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            return appendInternal(jedis, conversationId, messages, tokens).get(1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> appendInternal(Jedis jedis, String conversationId, List<Message> messages, long tokens)
+    {
+        List<byte[]> args = new ArrayList<>(messages.size() + 8);
+        args.add(SafeEncoder.encode(String.valueOf(maxMessages)));
+        args.add(SafeEncoder.encode(String.valueOf(ttlSeconds)));
+        args.add(SafeEncoder.encode(String.valueOf(System.currentTimeMillis())));
+        args.add(SafeEncoder.encode(conversationId));
+        args.add(SafeEncoder.encode(String.valueOf(maxConversationsPerUser)));
+        args.add(SafeEncoder.encode(String.valueOf(maxBytesPerUser)));
+        args.add(SafeEncoder.encode(TOTAL_BYTES_FIELD));
+        args.add(SafeEncoder.encode(String.valueOf(tokens)));
+        for (Message message : messages)
+        {
+            args.add(codec.encode(message));
+        }
+        List<Long> result = (List<Long>) APPEND_SCRIPT.eval(jedis, conversationKeys(conversationId), args);
+        if (result.get(2) == 1)
+        {
+            evictOverQuota(jedis, conversationId);
+        }
+        return result;
+    }
+
+    /**
+     * 超出配额时逐个淘汰最久未访问的会话，当前会话不淘汰
+     * 每淘汰一个会话是一次独立的脚本调用，脚本只访问该会话自身和所属用户的 key
+     */
+    private void evictOverQuota(Jedis jedis, String conversationId)
+    {
+        String conversationsKey = userConversationsKey(userIdOf(conversationId));
+        boolean over = true;
+        while (over)
+        {
+            String oldest = null;
+            for (String candidate : jedis.zrange(conversationsKey, 0, 0))
+            {
+                oldest = candidate;
+            }
+            if (oldest == null || oldest.equals(conversationId))
+            {
+                return;
+            }
+            over = delete(jedis, oldest, true);
+        }
+    }
+
+    /**
+     * @param all true 连同摘要和用户索引一起删除；false 只清空消息（saveAll 覆盖写之前）
+     * @return 删除后用户是否仍超出配额
+     */
+    private boolean delete(Jedis jedis, String conversationId, boolean all)
+    {
+        List<byte[]> args = List.of(SafeEncoder.encode(conversationId),
+                SafeEncoder.encode(TOTAL_BYTES_FIELD),
+                SafeEncoder.encode(all ? "1" : "0"),
+                SafeEncoder.encode(String.valueOf(maxConversationsPerUser)),
+                SafeEncoder.encode(String.valueOf(maxBytesPerUser)));
+        return (Long) DELETE_SCRIPT.eval(jedis, conversationKeys(conversationId), args) == 1;
+    }
+
+    /**
+     * 在同一个事务里读取会话全部消息和 token 计数，供摘要压缩使用
+     */
+    public Snapshot snapshot(String conversationId)
+    {
+        String userId = userIdOf(conversationId);
+        Response<List<byte[]>> values;
+        Response<String> tokens;
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            Transaction transaction = jedis.multi();
+            values = transaction.lrange(key(conversationId), 0, -1);
+            tokens = transaction.hget(userTokensKey(userId), conversationId);
+            transaction.exec();
+        }
+
+        List<Message> messages = new ArrayList<>(values.get().size());
+        for (byte[] value : values.get())
+        {
+            messages.add(codec.decode(value));
+        }
+        return new Snapshot(messages, values.get(), tokens.get() == null ? -1 : Long.parseLong(tokens.get()));
+    }
+
+    /**
+     * 删除快照中最早的 count 条消息（已被压缩进摘要的部分），并把 token 计数重置为 保留部分 + 快照之后新追加的部分
+     * @param retainedTokens 快照中未删除部分的 token 数
+     * @return 删除条数；摘要期间头部已被裁剪、与快照对不上时返回 -1，不删除任何消息
+     */
+    public long removeCompacted(String conversationId, Snapshot snapshot, int count, long retainedTokens)
+    {
+        String userId = userIdOf(conversationId);
+        List<byte[]> keys = List.of(key(conversationId),
+                SafeEncoder.encode(userBytesKey(userId)),
+                SafeEncoder.encode(userTokensKey(userId)));
+        List<byte[]> args = new ArrayList<>(count + 5);
+        args.add(SafeEncoder.encode(conversationId));
+        args.add(SafeEncoder.encode(String.valueOf(snapshot.tokens())));
+        args.add(SafeEncoder.encode(String.valueOf(retainedTokens)));
+        args.add(SafeEncoder.encode(String.valueOf(snapshot.encoded().size())));
+        args.add(SafeEncoder.encode(TOTAL_BYTES_FIELD));
+        args.addAll(snapshot.encoded().subList(0, count));
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            return (Long) REMOVE_COMPACTED_SCRIPT.eval(jedis, keys, args);
+        }
+    }
+
+    public String findSummary(String conversationId)
+    {
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            return jedis.get(summaryKeyPrefix + conversationId);
+        }
+    }
+
+    public void saveSummary(String conversationId, String summary)
+    {
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            if (ttlSeconds > 0)
+            {
+                jedis.setex(summaryKeyPrefix + conversationId, ttlSeconds, summary);
+            }
+            else
+            {
+                jedis.set(summaryKeyPrefix + conversationId, summary);
+            }
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId)
+    {
+        try (Jedis jedis = jedisFor(conversationId))
+        {
+            delete(jedis, conversationId, true);
+        }
+    }
+
+    public int getMaxMessages()
+    {
+        return maxMessages;
+    }
+
+    @Override
+    public void close()
+    {
+        jedisPools.values().forEach(JedisPool::close);
+    }
+
+    private Jedis jedisFor(String conversationId)
+    {
+        return jedisPools.get(nodeRing.get(userIdOf(conversationId))).getResource();
+    }
+
+    private static String userIdOf(String conversationId)
+    {
+        int separator = conversationId.indexOf(':');
+        return separator > 0 ? conversationId.substring(0, separator) : conversationId;
+    }
+
+    private String userConversationsKey(String userId)
+    {
+        return userKeyPrefix + userId + ":conversations";
+    }
+
+    private String userBytesKey(String userId)
+    {
+        return userKeyPrefix + userId + ":bytes";
+    }
+
+    private String userTokensKey(String userId)
+    {
+        return userKeyPrefix + userId + ":tokens";
+    }
+
+    private byte[] key(String conversationId)
+    {
+        return SafeEncoder.encode(keyPrefix + conversationId);
+    }
+
+    /**
+     * APPEND_SCRIPT、DELETE_SCRIPT 的 KEYS：会话List、会话摘要、用户会话ZSET、用户字节HASH、用户tokenHASH
+     */
+    private List<byte[]> conversationKeys(String conversationId)
+    {
+        String userId = userIdOf(conversationId);
+        return List.of(key(conversationId),
+                SafeEncoder.encode(summaryKeyPrefix + conversationId),
+                SafeEncoder.encode(userConversationsKey(userId)),
+                SafeEncoder.encode(userBytesKey(userId)),
+                SafeEncoder.encode(userTokensKey(userId)));
+    }
+
+    /**
+     * 会话快照
+     * @param messages 解码后的消息
+     * @param encoded  Redis 中的原始编码，删除时按内容核对
+     * @param tokens   读取时的 token 计数，未知为 -1
+     */
+    public record Snapshot(List<Message> messages, List<byte[]> encoded, long tokens)
+    {
+    }
+
+    /**
+     * EVALSHA 执行，节点上没有缓存脚本（新节点、重启、SCRIPT FLUSH）时先 SCRIPT LOAD 再执行
+     */
+    private static class LuaScript
+    {
+        private final byte[] source;
+        private volatile byte[] sha;
+
+        LuaScript(String source)
+        {
+            this.source = SafeEncoder.encode(source);
+        }
+
+        Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args)
+        {
+            if (sha == null)
+            {
+                sha = jedis.scriptLoad(source);
+            }
+            try {
+                return jedis.evalsha(sha, keys, args);
+            } catch (JedisNoScriptException e) {
+                sha = jedis.scriptLoad(source);
+                return jedis.evalsha(sha, keys, args);
+            }
+        }
+    }
+
+    public static class Builder
+    {
+        private String host = "localhost";
+        private int port = 6379;
+        private List<String> nodes = List.of();
+        private int virtualNodes = 160;
+        private String password;
+        private int timeout = 2000;
+        private String keyPrefix = DEFAULT_KEY_PREFIX;
+        private String summaryKeyPrefix = DEFAULT_SUMMARY_KEY_PREFIX;
+        private String userKeyPrefix = DEFAULT_USER_KEY_PREFIX;
+        private int maxMessages = 10;
+        private long ttlSeconds;
+        private int maxConversationsPerUser;
+        private long maxBytesPerUser;
+        private JedisPoolConfig poolConfig = new JedisPoolConfig();
+        private MessageCodec codec = new JsonMessageCodec();
+
+        public Builder host(String host)
+        {
+            this.host = host;
+            return this;
+        }
+
+        public Builder port(int port)
+        {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * 多个 Redis 节点（host:port），配置后忽略 host/port，按 userId 一致性哈希分片
+         */
+        public Builder nodes(List<String> nodes)
+        {
+            this.nodes = nodes == null ? List.of()
+                    : nodes.stream().map(String::trim).filter(node -> !node.isEmpty()).toList();
+            return this;
+        }
+
+        /**
+         * 每个物理节点在哈希环上的虚拟节点数，越大分布越均匀
+         */
+        public Builder virtualNodes(int virtualNodes)
+        {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        public Builder password(String password)
+        {
+            this.password = password;
+            return this;
+        }
+
+        public Builder timeout(int timeout)
+        {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder keyPrefix(String keyPrefix)
+        {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        public Builder summaryKeyPrefix(String summaryKeyPrefix)
+        {
+            this.summaryKeyPrefix = summaryKeyPrefix;
+            return this;
+        }
+
+        public Builder userKeyPrefix(String userKeyPrefix)
+        {
+            this.userKeyPrefix = userKeyPrefix;
+            return this;
+        }
+
+        /**
+         * 会话窗口大小，<=0 表示不裁剪
+         */
+        public Builder maxMessages(int maxMessages)
+        {
+            this.maxMessages = maxMessages;
+            return this;
+        }
+
+        /**
+         * 会话闲置过期时间，读写都会刷新，<=0 表示永不过期
+         */
+        public Builder ttlSeconds(long ttlSeconds)
+        {
+            this.ttlSeconds = ttlSeconds;
+            return this;
+        }
+
+        /**
+         * 每个用户最多保留的会话数，<=0 表示不限制
+         */
+        public Builder maxConversationsPerUser(int maxConversationsPerUser)
+        {
+            this.maxConversationsPerUser = maxConversationsPerUser;
+            return this;
+        }
+
+        /**
+         * 每个用户所有会话消息的总字节上限，<=0 表示不限制
+         */
+        public Builder maxBytesPerUser(long maxBytesPerUser)
+        {
+            this.maxBytesPerUser = maxBytesPerUser;
+            return this;
+        }
+
+        public Builder poolConfig(JedisPoolConfig poolConfig)
+        {
+            this.poolConfig = poolConfig;
+            return this;
+        }
+
+        public Builder codec(MessageCodec codec)
+        {
+            this.codec = codec;
+            return this;
+        }
+
+        public AppendOnlyRedisChatMemoryRepository build()
+        {
+            return new AppendOnlyRedisChatMemoryRepository(this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.redmoon2333.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按 token 预算管理的摘要记忆
+ * <p>
+ * 1. add：仍然只追加新消息，只对新消息计 token，会话总 token 数由 Redis 中的计数随追加原子累加，不再读回整个会话；
+ *    总数超过预算（或计数未知）时异步把较早的对话压缩进滚动摘要，不阻塞当前请求，只有压缩时才读取全量历史
+ * 2. get：返回 "摘要(SystemMessage) + 预算内最近的消息"，摘要还没生成完时也只截取预算内的部分，
+ *    保证每轮 prompt 大小基本恒定
+ */
+@Slf4j
+public class SummarizingChatMemory implements ChatMemory
+{
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            你是对话摘要助手。请把"已有摘要"和"新增对话"合并成一份新的摘要，
+            保留用户身份、偏好、已确认的事实和未完成的问题，省略寒暄，使用第三人称，不超过%d字。
+            """;
+    private static final String SUMMARY_PREFIX = "以下是之前对话的摘要，可作为上下文参考：\n";
+
+    private final AppendOnlyRedisChatMemoryRepository repository;
+    private final ChatModel summaryChatModel;
+    private final Executor executor;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    // 历史 token 上限，超过后触发压缩
+    private final int tokenBudget;
+    // 压缩后保留的最近消息 token 数
+    private final int retainTokens;
+    private final int summaryMaxChars;
+
+    // 正在压缩的会话，同一会话同时只跑一个摘要任务
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    public SummarizingChatMemory(AppendOnlyRedisChatMemoryRepository repository,
+                                 ChatModel summaryChatModel,
+                                 Executor executor,
+                                 int tokenBudget,
+                                 int summaryMaxChars)
+    {
+        this.repository = repository;
+        this.summaryChatModel = summaryChatModel;
+        this.executor = executor;
+        this.tokenBudget = tokenBudget;
+        this.retainTokens = tokenBudget / 2;
+        this.summaryMaxChars = summaryMaxChars;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages)
+    {
+        long tokens = repository.append(conversationId, messages, countTokens(messages));
+        if (tokens < 0 || tokens > tokenBudget)
+        {
+            scheduleCompaction(conversationId);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId)
+    {
+        List<Message> history = repository.findByConversationId(conversationId);
+        String summary = repository.findSummary(conversationId);
+
+        List<Message> result = new ArrayList<>();
+        int remaining = tokenBudget;
+        if (summary != null && !summary.isEmpty())
+        {
+            SystemMessage summaryMessage = new SystemMessage(SUMMARY_PREFIX + summary);
+            result.add(summaryMessage);
+            remaining -= tokenCountEstimator.estimate(summaryMessage.getText());
+        }
+
+        // 从新到旧取预算内的消息，至少保留最近一条
+        int from = history.size();
+        while (from > 0)
+        {
+            int tokens = estimate(history.get(from - 1));
+            if (from < history.size() && tokens > remaining)
+            {
+                break;
+            }
+            remaining -= tokens;
+            from--;
+        }
+        result.addAll(history.subList(from, history.size()));
+        return result;
+    }
+
+    @Override
+    public void clear(String conversationId)
+    {
+        repository.deleteByConversationId(conversationId);
+    }
+
+    private void scheduleCompaction(String conversationId)
+    {
+        if (!compacting.add(conversationId))
+        {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    compact(conversationId);
+                } catch (Exception e) {
+                    log.warn("会话 {} 摘要压缩失败: {}", conversationId, e.getMessage());
+                } finally {
+                    compacting.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 线程池满了就等下一轮再压缩，get 依旧按预算截取
+            compacting.remove(conversationId);
+        }
+    }
+
+    private void compact(String conversationId)
+    {
+        AppendOnlyRedisChatMemoryRepository.Snapshot snapshot = repository.snapshot(conversationId);
+        List<Message> history = snapshot.messages();
+
+        // 从新到旧保留 retainTokens 以内的消息，其余较早的部分进入摘要
+        int keepFrom = history.size();
+        int kept = 0;
+        while (keepFrom > 0)
+        {
+            int tokens = estimate(history.get(keepFrom - 1));
+            if (kept + tokens > retainTokens)
+            {
+                break;
+            }
+            kept += tokens;
+            keepFrom--;
+        }
+        // 不把一轮对话拆开：保留部分从用户消息开始
+        while (keepFrom < history.size() && history.get(keepFrom).getMessageType() != MessageType.USER)
+        {
+            keepFrom++;
+        }
+        long retainedTokens = countTokens(history.subList(keepFrom, history.size()));
+        if (keepFrom == 0)
+        {
+            // 没有可压缩的部分，只校正 token 计数
+            repository.removeCompacted(conversationId, snapshot, 0, retainedTokens);
+            return;
+        }
+
+        List<Message> older = history.subList(0, keepFrom);
+        String summary = summarize(repository.findSummary(conversationId), older);
+
+        // 先写摘要再删旧消息，中途失败最多是摘要和原文重复，不会丢上下文
+        repository.saveSummary(conversationId, summary);
+        if (repository.removeCompacted(conversationId, snapshot, older.size(), retainedTokens) < 0)
+        {
+            // 摘要期间窗口裁剪改变了头部，旧消息不删，计数已作废，下一次 add 会重新压缩
+            log.info("会话 {} 压缩期间历史已变化，放弃删除旧消息", conversationId);
+            return;
+        }
+        log.info("会话 {} 已压缩 {} 条消息进摘要", conversationId, older.size());
+    }
+
+    private String summarize(String previousSummary, List<Message> older)
+    {
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("已有摘要：\n")
+                .append(previousSummary == null ? "无" : previousSummary)
+                .append("\n\n新增对话：\n");
+        for (Message message : older)
+        {
+            transcript.append(message.getMessageType() == MessageType.USER ? "用户：" : "助手：")
+                    .append(message.getText())
+                    .append('\n');
+        }
+
+        Prompt prompt = new Prompt(List.of(
+                new SystemMessage(SUMMARY_SYSTEM_PROMPT.formatted(summaryMaxChars)),
+                new UserMessage(transcript.toString())));
+
+        return summaryChatModel.call(prompt).getResult().getOutput().getText();
+    }
+
+    private long countTokens(List<Message> messages)
+    {
+        long total = 0;
+        for (Message message : messages)
+        {
+            total += estimate(message);
+        }
+        return total;
+    }
+
+    private int estimate(Message message)
+    {
+        String text = message.getText();
+        return text == null ? 0 : tokenCountEstimator.estimate(text);
+    }
+}
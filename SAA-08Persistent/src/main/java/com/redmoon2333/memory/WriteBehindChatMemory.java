@@ -0,0 +1,326 @@
+package com.redmoon2333.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写后（write-behind）记忆：把 Redis 写入移出响应路径
+ * <p>
+ * 每个会话一个有界的有序缓冲队列，coalesceMillis 内的多次 add 合并成一次 delegate.add；
+ * 同一会话同一时刻只有一个写入者，保证落库顺序与 add 顺序一致。
+ * <ul>
+ *     <li>SYNC：直接写，与原来行为一致</li>
+ *     <li>ASYNC：异步写，get 时把本机尚未落库的消息（缓冲中和正在写入的）拼在后面</li>
+ *     <li>ASYNC_ACK：异步写，但下一轮 get 之前必须确认上一轮已经落库（读己之写）</li>
+ * </ul>
+ * 队列满时由调用线程同步刷盘形成背压；应用关闭时刷完所有缓冲。
+ * <p>
+ * 异步模式下每条消息在 add 时写入唯一的 metadata[chat_memory_id]，随消息一起落库（两种编码都保存 metadata）。
+ * 判断一条缓冲消息是否已经落库只看这个 id，不看内容：用户重复发送“继续”“好的”并得到相同回复时不会被误判去重；
+ * 写入超时但实际已提交的批次重试前先按 id 过滤掉已落库的部分，不会重复写入。
+ */
+@Slf4j
+public class WriteBehindChatMemory implements ChatMemory, DisposableBean
+{
+    public enum Durability
+    {
+        SYNC, ASYNC, ASYNC_ACK
+    }
+
+    public static final String MESSAGE_ID = "chat_memory_id";
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final ChatMemory delegate;
+    private final Durability durability;
+    private final int maxPendingPerConversation;
+    private final long coalesceMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, PendingWrites> pending = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public WriteBehindChatMemory(ChatMemory delegate, Durability durability,
+                                 int maxPendingPerConversation, long coalesceMillis, int flushThreads)
+    {
+        this.delegate = delegate;
+        this.durability = durability;
+        this.maxPendingPerConversation = maxPendingPerConversation;
+        this.coalesceMillis = coalesceMillis;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(flushThreads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-flush-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages)
+    {
+        if (durability == Durability.SYNC || closed)
+        {
+            delegate.add(conversationId, messages);
+            return;
+        }
+
+        for (Message message : messages)
+        {
+            message.getMetadata().putIfAbsent(MESSAGE_ID, UUID.randomUUID().toString());
+        }
+        while (true)
+        {
+            PendingWrites writes = pending.computeIfAbsent(conversationId, id -> new PendingWrites());
+            boolean overflow;
+            synchronized (writes)
+            {
+                if (writes.removed)
+                {
+                    continue;
+                }
+                overflow = writes.buffer.size() + messages.size() > maxPendingPerConversation;
+                if (!overflow)
+                {
+                    writes.buffer.addAll(messages);
+                    if (!writes.scheduled)
+                    {
+                        writes.scheduled = true;
+                        scheduleFlush(conversationId, writes, coalesceMillis);
+                    }
+                    return;
+                }
+            }
+
+            // 队列已满：调用线程先把积压的写完，再写本次消息
+            writes.writeLock.lock();
+            try {
+                flushBuffered(conversationId, writes, true);
+                delegate.add(conversationId, messages);
+            } finally {
+                writes.writeLock.unlock();
+            }
+            return;
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId)
+    {
+        PendingWrites writes = pending.get(conversationId);
+        if (writes == null || durability == Durability.SYNC)
+        {
+            return delegate.get(conversationId);
+        }
+
+        if (durability == Durability.ASYNC_ACK)
+        {
+            // 上一轮还没落库的话在这里等它写完
+            flush(conversationId, writes, true);
+            return delegate.get(conversationId);
+        }
+
+        // 必须先取未落库部分再读 Redis：反过来的话，读 Redis 之后才写完的批次会同时从两边消失
+        List<Message> unflushed;
+        synchronized (writes)
+        {
+            if (writes.inFlight.isEmpty() && writes.buffer.isEmpty())
+            {
+                unflushed = List.of();
+            }
+            else
+            {
+                unflushed = new ArrayList<>(writes.inFlight.size() + writes.buffer.size());
+                unflushed.addAll(writes.inFlight);
+                unflushed.addAll(writes.buffer);
+            }
+        }
+        List<Message> stored = delegate.get(conversationId);
+        if (unflushed.isEmpty())
+        {
+            return stored;
+        }
+        // 读 Redis 期间落库的消息按 id 去掉，不再重复拼接
+        Set<Object> landed = messageIds(stored);
+        List<Message> merged = new ArrayList<>(stored.size() + unflushed.size());
+        merged.addAll(stored);
+        for (Message message : unflushed)
+        {
+            if (!landed.contains(message.getMetadata().get(MESSAGE_ID)))
+            {
+                merged.add(message);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void clear(String conversationId)
+    {
+        PendingWrites writes = pending.get(conversationId);
+        if (writes != null)
+        {
+            synchronized (writes)
+            {
+                writes.buffer.clear();
+            }
+        }
+        delegate.clear(conversationId);
+    }
+
+    /**
+     * 应用关闭时把所有缓冲同步写完
+     */
+    @Override
+    public void destroy() throws InterruptedException
+    {
+        closed = true;
+        int conversations = pending.size();
+        for (Map.Entry<String, PendingWrites> entry : pending.entrySet())
+        {
+            try {
+                flush(entry.getKey(), entry.getValue(), true);
+            } catch (RuntimeException e) {
+                log.error("关闭时刷写会话 {} 失败", entry.getKey(), e);
+            }
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        log.info("chat memory write-behind 已关闭，刷写会话数: {}", conversations);
+    }
+
+    private void scheduleFlush(String conversationId, PendingWrites writes, long delayMillis)
+    {
+        if (closed)
+        {
+            // 关闭流程会同步刷写，这里不再投递任务
+            return;
+        }
+        scheduler.schedule(() -> {
+            synchronized (writes)
+            {
+                writes.scheduled = false;
+            }
+            flush(conversationId, writes, false);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(String conversationId, PendingWrites writes, boolean rethrow)
+    {
+        writes.writeLock.lock();
+        try {
+            flushBuffered(conversationId, writes, rethrow);
+        } finally {
+            writes.writeLock.unlock();
+        }
+        synchronized (writes)
+        {
+            if (writes.buffer.isEmpty() && writes.inFlight.isEmpty() && !writes.scheduled && !writes.removed)
+            {
+                writes.removed = true;
+                pending.remove(conversationId, writes);
+            }
+        }
+    }
+
+    /**
+     * 调用方必须持有 writeLock
+     */
+    private void flushBuffered(String conversationId, PendingWrites writes, boolean rethrow)
+    {
+        List<Message> batch;
+        boolean retry;
+        synchronized (writes)
+        {
+            if (writes.buffer.isEmpty())
+            {
+                return;
+            }
+            // 写入期间批次留在 inFlight 中，ASYNC 模式的 get 仍能看到它
+            writes.inFlight.addAll(writes.buffer);
+            writes.buffer.clear();
+            batch = new ArrayList<>(writes.inFlight);
+            retry = writes.failed;
+        }
+
+        try {
+            if (retry)
+            {
+                // 上次失败可能只是响应超时，数据其实已经写入；按 id 去掉已落库的部分
+                Set<Object> landed = messageIds(delegate.get(conversationId));
+                batch.removeIf(message -> landed.contains(message.getMetadata().get(MESSAGE_ID)));
+            }
+            if (!batch.isEmpty())
+            {
+                delegate.add(conversationId, batch);
+            }
+            synchronized (writes)
+            {
+                writes.inFlight.clear();
+                writes.failed = false;
+            }
+        } catch (RuntimeException e) {
+            // 放回队首保持顺序，稍后重试
+            synchronized (writes)
+            {
+                for (int i = writes.inFlight.size() - 1; i >= 0; i--)
+                {
+                    writes.buffer.addFirst(writes.inFlight.get(i));
+                }
+                writes.inFlight.clear();
+                writes.failed = true;
+                if (!writes.scheduled && !closed)
+                {
+                    writes.scheduled = true;
+                    scheduleFlush(conversationId, writes, RETRY_DELAY_MILLIS);
+                }
+            }
+            if (rethrow)
+            {
+                throw e;
+            }
+            log.warn("会话 {} 异步写入失败，{}ms 后重试: {}", conversationId, RETRY_DELAY_MILLIS, e.getMessage());
+        }
+    }
+
+    private static Set<Object> messageIds(List<Message> messages)
+    {
+        Set<Object> ids = new HashSet<>();
+        for (Message message : messages)
+        {
+            Object id = message.getMetadata().get(MESSAGE_ID);
+            if (id != null)
+            {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static class PendingWrites
+    {
+        private final ArrayDeque<Message> buffer = new ArrayDeque<>();
+        // 正在写入 delegate 的批次，写成功后才清空
+        private final List<Message> inFlight = new ArrayList<>();
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private boolean scheduled;
+        private boolean removed;
+        // 上一次写入失败，重试前需要按 id 去重
+        private boolean failed;
+    }
+}
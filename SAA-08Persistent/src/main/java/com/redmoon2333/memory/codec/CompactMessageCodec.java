@@ -0,0 +1,295 @@
+package com.redmoon2333.memory.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AbstractMessage;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制编码
+ * <p>
+ * 布局：魔数(1) | 消息类型(1) | 标志位(1) | varint 原文长度 | [varint 压缩长度] | 正文 | [varint 长度 + 元数据JSON] | [varint 长度 + 工具调用JSON]
+ * <ul>
+ *     <li>消息类型用 1 个字节代替 "messageType":"ASSISTANT" 这类字段名+字符串</li>
+ *     <li>metadata 里冗余的 messageType 不再存储，为空时整段省略</li>
+ *     <li>正文超过阈值时用带预置字典的 raw deflate 压缩，压缩后没变小则保留原文</li>
+ * </ul>
+ * 解码时首字节不是魔数的按旧 JSON 格式读取，已有数据无需迁移。
+ */
+public class CompactMessageCodec implements MessageCodec
+{
+    static final byte MAGIC = (byte) 0xC5;
+
+    private static final int FLAG_DEFLATED = 1;
+    private static final int FLAG_METADATA = 1 << 1;
+    private static final int FLAG_EXTRAS = 1 << 2;
+    private static final int FLAG_NULL_TEXT = 1 << 3;
+
+    // 预置字典：对话里高频出现的片段，短文本也能从第一个字节开始命中
+    private static final byte[] DICTIONARY = String.join("",
+            "```java\n", "```json\n", "```\n", "\n\n", "### ", "**", "- ", "1. ", "2. ", "3. ",
+            "public class ", "public static void main(String[] args)", "System.out.println(",
+            "如果你有其他问题，欢迎随时提问！", "希望对你有帮助", "以下是", "总结：", "示例代码", "注意事项",
+            "首先，", "其次，", "最后，", "例如：", "可以", "我们", "你可以", "这个", "需要", "使用", "问题", "的",
+            "你好！我是通义千问，阿里巴巴集团旗下的超大规模语言模型。", "有什么我可以帮你的吗？")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageCodec legacyCodec;
+    // 正文达到该字节数才尝试压缩，太短的文本压缩收益抵不过 varint 开销
+    private final int compressThreshold;
+
+    public CompactMessageCodec()
+    {
+        this(new JsonMessageCodec(), 128);
+    }
+
+    public CompactMessageCodec(MessageCodec legacyCodec, int compressThreshold)
+    {
+        this.legacyCodec = legacyCodec;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] encode(Message message)
+    {
+        String text = message.getText();
+        byte[] raw = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = raw.length >= compressThreshold ? deflate(raw) : null;
+        boolean deflated = compressed != null && compressed.length < raw.length;
+
+        Map<String, Object> metadata = new HashMap<>(message.getMetadata());
+        metadata.remove(AbstractMessage.MESSAGE_TYPE);
+        byte[] extras = encodeExtras(message);
+
+        int flags = 0;
+        if (deflated) flags |= FLAG_DEFLATED;
+        if (!metadata.isEmpty()) flags |= FLAG_METADATA;
+        if (extras != null) flags |= FLAG_EXTRAS;
+        if (text == null) flags |= FLAG_NULL_TEXT;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        out.write(MAGIC);
+        out.write(typeCode(message.getMessageType()));
+        out.write(flags);
+        writeVarint(out, raw.length);
+        if (deflated)
+        {
+            writeVarint(out, compressed.length);
+            out.writeBytes(compressed);
+        }
+        else
+        {
+            out.writeBytes(raw);
+        }
+        if (!metadata.isEmpty())
+        {
+            writeBlock(out, toJson(metadata));
+        }
+        if (extras != null)
+        {
+            writeBlock(out, extras);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Message decode(byte[] bytes)
+    {
+        if (bytes.length == 0 || bytes[0] != MAGIC)
+        {
+            return legacyCodec.decode(bytes);
+        }
+
+        int[] pos = {1};
+        MessageType messageType = typeOf(bytes[pos[0]++]);
+        int flags = bytes[pos[0]++];
+
+        int rawLength = readVarint(bytes, pos);
+        String text;
+        if ((flags & FLAG_DEFLATED) != 0)
+        {
+            int compressedLength = readVarint(bytes, pos);
+            text = new String(inflate(bytes, pos[0], compressedLength, rawLength), StandardCharsets.UTF_8);
+            pos[0] += compressedLength;
+        }
+        else
+        {
+            text = new String(bytes, pos[0], rawLength, StandardCharsets.UTF_8);
+            pos[0] += rawLength;
+        }
+        if ((flags & FLAG_NULL_TEXT) != 0)
+        {
+            text = null;
+        }
+
+        Map<String, Object> metadata = (flags & FLAG_METADATA) != 0
+                ? fromJson(readBlock(bytes, pos), new TypeReference<Map<String, Object>>() {})
+                : new HashMap<>();
+        byte[] extras = (flags & FLAG_EXTRAS) != 0 ? readBlock(bytes, pos) : null;
+
+        return switch (messageType) {
+            case USER -> UserMessage.builder().text(text == null ? "" : text).metadata(metadata).build();
+            case SYSTEM -> SystemMessage.builder().text(text == null ? "" : text).metadata(metadata).build();
+            case ASSISTANT -> new AssistantMessage(text, metadata, extras == null ? List.of()
+                    : fromJson(extras, new TypeReference<List<AssistantMessage.ToolCall>>() {}));
+            case TOOL -> new ToolResponseMessage(extras == null ? List.of()
+                    : fromJson(extras, new TypeReference<List<ToolResponseMessage.ToolResponse>>() {}), metadata);
+        };
+    }
+
+    private byte[] encodeExtras(Message message)
+    {
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls())
+        {
+            return toJson(assistantMessage.getToolCalls());
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage && !toolResponseMessage.getResponses().isEmpty())
+        {
+            return toJson(toolResponseMessage.getResponses());
+        }
+        return null;
+    }
+
+    private static byte[] deflate(byte[] raw)
+    {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+        byte[] buffer = new byte[Math.max(64, raw.length)];
+        while (!deflater.finished())
+        {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int length, int rawLength)
+    {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(bytes, offset, length);
+
+        byte[] raw = new byte[rawLength];
+        try {
+            int n = 0;
+            while (n < rawLength)
+            {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput()))
+                {
+                    break;
+                }
+                n += read;
+            }
+            if (n != rawLength)
+            {
+                throw new IllegalStateException("会话消息解压长度不符: " + n + "/" + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("会话消息解压失败", e);
+        }
+        return raw;
+    }
+
+    private byte[] toJson(Object value)
+    {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("序列化会话消息失败", e);
+        }
+    }
+
+    private <T> T fromJson(byte[] bytes, TypeReference<T> type)
+    {
+        try {
+            return objectMapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("反序列化会话消息失败", e);
+        }
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] block)
+    {
+        writeVarint(out, block.length);
+        out.writeBytes(block);
+    }
+
+    private static byte[] readBlock(byte[] bytes, int[] pos)
+    {
+        int length = readVarint(bytes, pos);
+        byte[] block = new byte[length];
+        System.arraycopy(bytes, pos[0], block, 0, length);
+        pos[0] += length;
+        return block;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] pos)
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int typeCode(MessageType messageType)
+    {
+        return switch (messageType) {
+            case USER -> 1;
+            case ASSISTANT -> 2;
+            case SYSTEM -> 3;
+            case TOOL -> 4;
+        };
+    }
+
+    private static MessageType typeOf(byte code)
+    {
+        return switch (code) {
+            case 1 -> MessageType.USER;
+            case 2 -> MessageType.ASSISTANT;
+            case 3 -> MessageType.SYSTEM;
+            case 4 -> MessageType.TOOL;
+            default -> throw new IllegalStateException("未知的消息类型编码: " + code);
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package com.redmoon2333.memory.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON 编码，字段与 spring-ai-alibaba RedisChatMemoryRepository 写入的格式兼容
+ */
+public class JsonMessageCodec implements MessageCodec
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public byte[] encode(Message message)
+    {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("messageType", message.getMessageType().name());
+        node.put("text", message.getText());
+        node.put("metadata", message.getMetadata());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls())
+        {
+            node.put("toolCalls", assistantMessage.getToolCalls());
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage)
+        {
+            node.put("responses", toolResponseMessage.getResponses());
+        }
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException("序列化会话消息失败", e);
+        }
+    }
+
+    @Override
+    public Message decode(byte[] bytes)
+    {
+        try {
+            JsonNode node = objectMapper.readTree(bytes);
+            MessageType messageType = MessageType.valueOf(node.path("messageType").asText(MessageType.USER.name()));
+            String text = node.path("text").isNull() ? null : node.path("text").asText(null);
+            Map<String, Object> metadata = node.hasNonNull("metadata")
+                    ? objectMapper.convertValue(node.get("metadata"), new TypeReference<Map<String, Object>>() {})
+                    : new HashMap<>();
+
+            return switch (messageType) {
+                case USER -> UserMessage.builder().text(text == null ? "" : text).metadata(metadata).build();
+                case SYSTEM -> SystemMessage.builder().text(text == null ? "" : text).metadata(metadata).build();
+                case ASSISTANT -> new AssistantMessage(text, metadata, node.hasNonNull("toolCalls")
+                        ? objectMapper.convertValue(node.get("toolCalls"), new TypeReference<List<AssistantMessage.ToolCall>>() {})
+                        : List.of());
+                case TOOL -> new ToolResponseMessage(node.hasNonNull("responses")
+                        ? objectMapper.convertValue(node.get("responses"), new TypeReference<List<ToolResponseMessage.ToolResponse>>() {})
+                        : List.of(), metadata);
+            };
+        } catch (IOException e) {
+            throw new IllegalStateException("反序列化会话消息失败", e);
+        }
+    }
+}
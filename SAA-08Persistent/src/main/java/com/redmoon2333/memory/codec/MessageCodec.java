@@ -0,0 +1,13 @@
+package com.redmoon2333.memory.codec;
+
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 会话消息在 Redis 中的存储编码
+ */
+public interface MessageCodec
+{
+    byte[] encode(Message message);
+
+    Message decode(byte[] bytes);
+}
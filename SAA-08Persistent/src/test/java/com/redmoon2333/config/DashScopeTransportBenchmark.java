@@ -0,0 +1,143 @@
+package com.redmoon2333.config;
+
+import io.netty.channel.ChannelOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DashScope 传输层连接复用的收益：共用连接池（与 DashScopeTransportConfig 相同的配置）与每次请求新建连接的对比
+ * <p>
+ * 每次调用是一次同步 POST（DashScopeApi 的同步调用走 RestClient + ReactorClientHttpRequestFactory），8 个线程并发。
+ * 默认请求本机启动的 HTTP 桩服务，立即返回一段 chat 响应大小的 JSON，只测传输层开销，本机只有 TCP 握手，是收益的下限；
+ * 用 -Dbench.url=https://... 指向真实的 HTTPS 地址时，新建连接还要付 TLS 握手和网络往返，更接近线上。
+ * 运行：在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动 org.openjdk.jmh.Main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DashScopeTransportBenchmark
+{
+    private static final String PATH = "/api/v1/services/aigc/text-generation/generation";
+    private static final String REQUEST = "{\"model\":\"qwen-plus\",\"input\":{\"messages\":[{\"role\":\"user\",\"content\":\"你好\"}]}}";
+    private static final String RESPONSE = "{\"output\":{\"choices\":[{\"finish_reason\":\"stop\",\"message\":{\"role\":\"assistant\",\"content\":\""
+            + "你好".repeat(200) + "\"}}]},\"usage\":{\"input_tokens\":10,\"output_tokens\":400,\"total_tokens\":410},"
+            + "\"request_id\":\"bench\"}";
+
+    private DisposableServer server;
+    private ConnectionProvider connectionProvider;
+    private RestClient pooled;
+    private RestClient perRequest;
+    private String url;
+
+    @Setup
+    public void setUp()
+    {
+        url = System.getProperty("bench.url");
+        if (url == null)
+        {
+            server = HttpServer.create()
+                    .host("127.0.0.1")
+                    .port(0)
+                    .handle((request, response) -> response
+                            .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                            .sendString(request.receive().then(Mono.just(RESPONSE))))
+                    .bindNow();
+            url = "http://127.0.0.1:" + server.port() + PATH;
+        }
+        boolean https = url.startsWith("https");
+
+        // 与 DashScopeTransportConfig 的默认值一致
+        connectionProvider = ConnectionProvider.builder("dashscope-bench")
+                    .maxConnections(200)
+                    .pendingAcquireTimeout(Duration.ofMillis(5000))
+                    .maxIdleTime(Duration.ofSeconds(60))
+                .build();
+        pooled = restClient(HttpClient.create(connectionProvider), https);
+        // 不进连接池，每次请求都重新建连（https 时含 TLS 握手），请求结束即关闭
+        perRequest = restClient(HttpClient.newConnection(), https);
+    }
+
+    private static RestClient restClient(HttpClient httpClient, boolean https)
+    {
+        HttpClient configured = httpClient
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofSeconds(120))
+                .compress(true);
+        configured = https
+                ? configured.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure()
+                : configured.protocol(HttpProtocol.HTTP11);
+        return RestClient.builder().requestFactory(new ReactorClientHttpRequestFactory(configured)).build();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        connectionProvider.dispose();
+        if (server != null)
+        {
+            server.disposeNow();
+        }
+    }
+
+    @Benchmark
+    public String sharedPool()
+    {
+        return call(pooled);
+    }
+
+    @Benchmark
+    public String newConnectionPerRequest()
+    {
+        return call(perRequest);
+    }
+
+    private String call(RestClient restClient)
+    {
+        return restClient.post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(REQUEST)
+                .retrieve()
+                // 只测传输层，真实地址不带 API Key 返回 401 也照常读完响应体
+                .onStatus(HttpStatusCode::isError, (request, response) -> {})
+                .body(String.class);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(DashScopeTransportBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+package com.redmoon2333.memory;
+
+import com.alibaba.cloud.ai.memory.redis.RedisChatMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每轮写入成本：stock RedisChatMemoryRepository + MessageWindowChatMemory（读全量 -> 合并 -> DEL + 全量 RPUSH）
+ * 与 AppendOnlyChatMemory（一次 Lua：RPUSH 新消息 + LTRIM）的对比，随历史长度增长
+ * <p>
+ * 每次调用模拟一轮对话：写入 1 条用户消息 + 1 条回答。窗口大小等于 history，会话预先填满，
+ * 测到的是稳态下每轮的写入耗时，历史越长 stock 实现每轮搬运的消息越多。
+ * <p>
+ * 需要本机 Redis（例如 docker run -p 6379:6379 redis:7），地址用 -Dredis.host / -Dredis.port 指定，默认 localhost:6379；
+ * 只写 bench- 开头的会话，结束时删除。
+ * 运行：在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动 org.openjdk.jmh.Main（加 -prof gc）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMemoryWriteBenchmark
+{
+    private static final String STOCK_CONVERSATION = "bench-stock";
+    private static final String APPEND_CONVERSATION = "bench-append";
+
+    // 窗口大小，即稳态下会话中的消息数
+    @Param({"10", "50", "200"})
+    private int history;
+
+    // 每条消息的字符数，中文回答通常几百字
+    @Param({"200"})
+    private int messageChars;
+
+    private RedisChatMemoryRepository stockRepository;
+    private AppendOnlyRedisChatMemoryRepository appendOnlyRepository;
+    private ChatMemory stockMemory;
+    private ChatMemory appendOnlyMemory;
+    private List<Message> turn;
+
+    @Setup
+    public void setUp()
+    {
+        String host = System.getProperty("redis.host", "localhost");
+        int port = Integer.getInteger("redis.port", 6379);
+
+        stockRepository = RedisChatMemoryRepository.builder()
+                    .host(host)
+                    .port(port)
+                .build();
+        stockMemory = MessageWindowChatMemory.builder()
+                    .chatMemoryRepository(stockRepository)
+                    .maxMessages(history)
+                .build();
+
+        appendOnlyRepository = AppendOnlyRedisChatMemoryRepository.builder()
+                    .host(host)
+                    .port(port)
+                    .maxMessages(history)
+                .build();
+        appendOnlyMemory = new AppendOnlyChatMemory(appendOnlyRepository);
+
+        String text = "测".repeat(messageChars);
+        turn = List.of(new UserMessage(text), new AssistantMessage(text));
+        List<Message> prefill = new ArrayList<>(history);
+        for (int i = 0; i < history; i++)
+        {
+            prefill.add(i % 2 == 0 ? new UserMessage(text) : new AssistantMessage(text));
+        }
+
+        stockRepository.deleteByConversationId(STOCK_CONVERSATION);
+        appendOnlyRepository.deleteByConversationId(APPEND_CONVERSATION);
+        stockRepository.saveAll(STOCK_CONVERSATION, prefill);
+        appendOnlyRepository.append(APPEND_CONVERSATION, prefill);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        stockRepository.deleteByConversationId(STOCK_CONVERSATION);
+        appendOnlyRepository.deleteByConversationId(APPEND_CONVERSATION);
+        appendOnlyRepository.close();
+    }
+
+    @Benchmark
+    public void stockWindowMemory()
+    {
+        stockMemory.add(STOCK_CONVERSATION, turn);
+    }
+
+    @Benchmark
+    public void appendOnlyMemory()
+    {
+        appendOnlyMemory.add(APPEND_CONVERSATION, turn);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(ChatMemoryWriteBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
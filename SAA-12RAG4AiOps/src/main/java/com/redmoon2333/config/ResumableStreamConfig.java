@@ -0,0 +1,26 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.stream.ResumableStreamRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ResumableStreamConfig
+{
+    // 每条流最多保留的块数、结束后保留时间、客户端断开后上游继续生成的宽限期
+    @Value("${stream.resume.max-chunks:4096}")
+    private int maxChunks;
+    @Value("${stream.resume.ttl-seconds:60}")
+    private long ttlSeconds;
+    @Value("${stream.resume.grace-seconds:30}")
+    private long graceSeconds;
+
+    @Bean
+    public ResumableStreamRegistry resumableStreamRegistry()
+    {
+        return new ResumableStreamRegistry(maxChunks, Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(graceSeconds));
+    }
+}
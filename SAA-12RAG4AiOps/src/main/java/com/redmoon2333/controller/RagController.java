@@ -1,12 +1,16 @@
 package com.redmoon2333.controller;
 
+import com.redmoon2333.stream.ResumableStreamRegistry;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
@@ -18,10 +22,39 @@ public class RagController
     private ChatClient chatClient;
     @Resource
     private VectorStore vectorStore;
+    @Resource
+    private ResumableStreamRegistry resumableStreamRegistry;
 
 
     @GetMapping("/rag4aiops")
     public Flux<String> rag(String msg)
+    {
+        return answer(msg);
+    }
+
+    /**
+     * SSE 版本，事件 id 为 streamId:offset；手机端断线重连带 Last-Event-ID 时从断点续传，不重新检索和生成
+     */
+    @GetMapping(value = "/rag4aiops/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> ragStream(String msg,
+                                                   @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+    {
+        String binding = ResumableStreamRegistry.binding("/rag4aiops/stream", msg);
+        ResumableStreamRegistry.ResumableStream stream = resumableStreamRegistry.resume(lastEventId, binding);
+        if (stream == null)
+        {
+            stream = resumableStreamRegistry.open(binding, answer(msg));
+        }
+        String streamId = stream.id();
+        long afterOffset = stream.afterOffset();
+        return stream.tokens()
+                .index()
+                .map(indexed -> ServerSentEvent.builder(indexed.getT2())
+                        .id(streamId + ":" + (afterOffset + 1 + indexed.getT1()))
+                        .build());
+    }
+
+    private Flux<String> answer(String msg)
     {
         String systemInfo = """
                 你是一个运维工程师,按照给出的编码给出对应故障解释,否则回复找不到信息。
@@ -0,0 +1,53 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.model.MeteredChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * 所有 ChatModel Bean 统一包一层 MeteredChatModel，Controller 和 ChatClient 无需改动
+ * 指标查看：/actuator/metrics/chat.stream.ttft 等
+ */
+@Configuration
+public class ChatModelMetricsConfig
+{
+    @Bean
+    public static MeteredChatModelPostProcessor meteredChatModelPostProcessor(ObjectProvider<MeterRegistry> meterRegistry)
+    {
+        return new MeteredChatModelPostProcessor(meterRegistry);
+    }
+
+    /**
+     * 最后执行（位于装饰链最外层），耗时包含限流排队等内层装饰器的开销，即调用方实际感受到的延迟
+     */
+    public static class MeteredChatModelPostProcessor implements BeanPostProcessor, Ordered
+    {
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+
+        public MeteredChatModelPostProcessor(ObjectProvider<MeterRegistry> meterRegistry)
+        {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+            if (bean instanceof ChatModel chatModel && !(bean instanceof MeteredChatModel))
+            {
+                return new MeteredChatModel(chatModel, beanName, meterRegistry.getObject());
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
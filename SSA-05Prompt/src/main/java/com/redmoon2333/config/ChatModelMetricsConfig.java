@@ -0,0 +1,68 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.model.HedgingChatModel;
+import com.redmoon2333.model.MeteredChatModel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * 所有 ChatModel Bean 统一包一层 MeteredChatModel，Controller 和 ChatClient 无需改动
+ * HedgingChatModel 只是转发到 deepseek / qwen 两个已计量的 Bean，再包一层会把同一次请求记两遍，
+ * 因此不包装，只登记它自己的对冲计数（chat.hedge.requests / chat.hedge.hedges / chat.hedge.secondary.wins）
+ * 指标查看：/actuator/metrics/chat.stream.ttft 等
+ */
+@Configuration
+public class ChatModelMetricsConfig
+{
+    @Bean
+    public static MeteredChatModelPostProcessor meteredChatModelPostProcessor(ObjectProvider<MeterRegistry> meterRegistry)
+    {
+        return new MeteredChatModelPostProcessor(meterRegistry);
+    }
+
+    /**
+     * 最后执行（位于装饰链最外层），耗时包含限流排队等内层装饰器的开销，即调用方实际感受到的延迟
+     */
+    public static class MeteredChatModelPostProcessor implements BeanPostProcessor, Ordered
+    {
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+
+        public MeteredChatModelPostProcessor(ObjectProvider<MeterRegistry> meterRegistry)
+        {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName)
+        {
+            if (bean instanceof HedgingChatModel hedging)
+            {
+                MeterRegistry registry = meterRegistry.getObject();
+                FunctionCounter.builder("chat.hedge.requests", hedging, HedgingChatModel::getRequests)
+                        .tag("bean", beanName).register(registry);
+                FunctionCounter.builder("chat.hedge.hedges", hedging, HedgingChatModel::getHedges)
+                        .tag("bean", beanName).register(registry);
+                FunctionCounter.builder("chat.hedge.secondary.wins", hedging, HedgingChatModel::getSecondaryWins)
+                        .tag("bean", beanName).register(registry);
+                return bean;
+            }
+            if (bean instanceof ChatModel chatModel && !(bean instanceof MeteredChatModel))
+            {
+                return new MeteredChatModel(chatModel, beanName, meterRegistry.getObject());
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder()
+        {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
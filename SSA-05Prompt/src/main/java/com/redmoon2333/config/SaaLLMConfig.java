@@ -3,13 +3,17 @@ package com.redmoon2333.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.redmoon2333.model.HedgingChatModel;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class SaaLLMConfig
 {
@@ -18,12 +22,10 @@ public class SaaLLMConfig
     private final String QWEN_MODEL = "qwen-plus";
 
     @Bean(name = "deepseek")
-    public ChatModel deepSeek()
+    public ChatModel deepSeek(DashScopeApi dashScopeApi)
     {
         return DashScopeChatModel.builder()
-                        .dashScopeApi(DashScopeApi.builder()
-                                    .apiKey(System.getenv("aliQwen_api"))
-                                .build())
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build()
                 )
@@ -31,11 +33,9 @@ public class SaaLLMConfig
     }
 
     @Bean(name = "qwen")
-    public ChatModel qwen()
+    public ChatModel qwen(DashScopeApi dashScopeApi)
     {
-        return DashScopeChatModel.builder().dashScopeApi(DashScopeApi.builder()
-                        .apiKey(System.getenv("aliQwen_api"))
-                        .build())
+        return DashScopeChatModel.builder().dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder()
                                 .withModel(QWEN_MODEL)
@@ -44,6 +44,18 @@ public class SaaLLMConfig
                 .build();
     }
 
+    /**
+     * 对冲模型：主模型 deepseek，首 token 超过 hedge-delay 仍未返回时加发 qwen，先出 token 的胜出
+     */
+    @Bean(name = "hedging")
+    public ChatModel hedging(@Qualifier("deepseek") ChatModel deepseek, @Qualifier("qwen") ChatModel qwen,
+                             @Value("${chat.hedge.delay-millis:800}") long hedgeDelayMillis,
+                             @Value("${chat.hedge.ratio:0.1}") double hedgeRatio,
+                             @Value("${chat.hedge.burst:10}") int hedgeBurst)
+    {
+        return new HedgingChatModel(deepseek, qwen, Duration.ofMillis(hedgeDelayMillis), hedgeRatio, hedgeBurst);
+    }
+
     @Bean(name = "deepseekChatClient")
     public ChatClient deepseekChatClient(@Qualifier("deepseek") ChatModel deepSeek)
     {
@@ -1,11 +1,10 @@
 package com.redmoon2333.controller;
 
+import com.redmoon2333.prompt.PromptAssembler;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
@@ -18,11 +17,20 @@ import java.util.List;
 @RestController
 public class PromptController
 {
+    // 固定的系统提示词放在请求最前面，逐字节不变才能命中 DashScope 上下文缓存
+    private static final String LEGAL_SYSTEM = "你是一个法律助手，只回答法律问题，其它问题回复，我只能回答法律相关问题，其它无可奉告";
+    private static final String STORY_SYSTEM = "你是一个讲故事的助手,每个故事控制在300字以内";
+    private static final String HTML_STORY_SYSTEM = "你是一个讲故事的助手,每个故事控制在600字以内且以HTML格式返回";
+
     @Resource(name = "deepseek")
     private ChatModel deepseekChatModel;
     @Resource(name = "qwen")
     private ChatModel qwenChatModel;
 
+    // deepseek 为主、qwen 对冲的组合模型
+    @Resource(name = "hedging")
+    private ChatModel hedgingChatModel;
+
     @Resource(name = "deepseekChatClient")
     private ChatClient deepseekChatClient;
     @Resource(name = "qwenChatClient")
@@ -33,10 +41,13 @@ public class PromptController
     @GetMapping("/prompt/chat")
     public Flux<String> chat(String question)
     {
-        return deepseekChatClient.prompt()
-                // AI 能力边界
-                .system("你是一个法律助手，只回答法律问题，其它问题回复，我只能回答法律相关问题，其它无可奉告")
-                .user(question)
+        // AI 能力边界
+        Prompt prompt = PromptAssembler.builder()
+                    .system(LEGAL_SYSTEM)
+                    .user(question)
+                .build();
+
+        return deepseekChatClient.prompt(prompt)
                 .stream()
                 .content();
     }
@@ -44,13 +55,11 @@ public class PromptController
     @GetMapping("/prompt/chat2")
     public Flux<ChatResponse> chat2(String question)
     {
-        // 系统消息
-        SystemMessage systemMessage = new SystemMessage("你是一个讲故事的助手,每个故事控制在300字以内");
-
-        // 用户消息
-        UserMessage userMessage = new UserMessage(question);
-
-        Prompt prompt = new Prompt(userMessage, systemMessage);
+        // 系统消息在前、用户消息在后
+        Prompt prompt = PromptAssembler.builder()
+                    .system(STORY_SYSTEM)
+                    .user(question)
+                .build();
 
         return deepseekChatModel.stream(prompt);
 
@@ -59,20 +68,29 @@ public class PromptController
     @GetMapping("/prompt/chat3")
     public Flux<String> chat3(String question)
     {
-        // 系统消息
-        SystemMessage systemMessage = new SystemMessage("你是一个讲故事的助手," +
-                "每个故事控制在600字以内且以HTML格式返回");
-
-        // 用户消息
-        UserMessage userMessage = new UserMessage(question);
-
-        Prompt prompt = new Prompt(userMessage, systemMessage);
+        // 系统消息在前、用户消息在后
+        Prompt prompt = PromptAssembler.builder()
+                    .system(HTML_STORY_SYSTEM)
+                    .user(question)
+                .build();
 
         return deepseekChatModel.stream(prompt)
                 .map(response -> response.getResults().get(0).getOutput().getText());
 
     }
 
+    @GetMapping("/prompt/hedge/chat")
+    public Flux<String> hedgeChat(String question)
+    {
+        Prompt prompt = PromptAssembler.builder()
+                    .system(STORY_SYSTEM)
+                    .user(question)
+                .build();
+
+        return hedgingChatModel.stream(prompt)
+                .map(response -> response.getResults().get(0).getOutput().getText());
+    }
+
     @GetMapping("/prompt/chat4")
     public String chat4(String question)
     {
@@ -0,0 +1,208 @@
+package com.redmoon2333.model;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲请求（hedged request）：用第二个模型兜住主模型的长尾延迟
+ * <p>
+ * 先调用主模型，hedgeDelay 内没有收到第一个响应块，就再向备用模型发一次同样的请求，
+ * 谁先出第一个 token 就用谁，另一个立即取消。
+ * <ul>
+ *     <li>胜负按第一个带正文（或工具调用）的响应块判定，之前只有元数据、空文本的块先暂存，胜出后一并下发，
+ *         避免空的首包让一个还没开始生成的模型胜出</li>
+ *     <li>对冲预算：每个请求积累 hedgeRatio 个额度，每次对冲消耗 1 个，长期对冲比例不超过 hedgeRatio，
+ *         上游整体变慢时不会让调用量翻倍</li>
+ *     <li>备用请求复制原请求的 options（包括 DashScope 专有参数），只把模型名换成备用模型自己的</li>
+ * </ul>
+ */
+@Slf4j
+public class HedgingChatModel implements ChatModel
+{
+    // 额度按千分之一存，避免浮点并发累加
+    private static final long UNIT = 1000;
+
+    private final ChatModel primary;
+    private final ChatModel secondary;
+    private final Duration hedgeDelay;
+    private final long creditPerRequest;
+    private final long maxCredit;
+    private final AtomicLong credit;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong secondaryWins = new AtomicLong();
+
+    /**
+     * @param hedgeDelay 等待主模型首个响应的时间，一般取主模型首 token 延迟的 p90~p95
+     * @param hedgeRatio 对冲请求占总请求的比例上限，例如 0.1
+     * @param burst      预算最多可攒下的对冲次数，应对短时间集中变慢
+     */
+    public HedgingChatModel(ChatModel primary, ChatModel secondary, Duration hedgeDelay, double hedgeRatio, int burst)
+    {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.hedgeDelay = hedgeDelay;
+        this.creditPerRequest = Math.round(hedgeRatio * UNIT);
+        this.maxCredit = burst * UNIT;
+        this.credit = new AtomicLong(maxCredit);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        return Flux.defer(() -> {
+            deposit();
+            AtomicBoolean secondaryWon = new AtomicBoolean();
+            Flux<ChatResponse> hedged = Mono.delay(hedgeDelay)
+                    .filter(tick -> tryAcquire())
+                    .flatMapMany(tick -> secondary.stream(secondaryPrompt(prompt))
+                            .doOnSubscribe(subscription -> log.debug("主模型 {}ms 内无响应，发起对冲请求", hedgeDelay.toMillis()))
+                            .doOnNext(response -> {
+                                if (hasContent(response) && secondaryWon.compareAndSet(false, true))
+                                {
+                                    secondaryWins.incrementAndGet();
+                                }
+                            }));
+            // 先出正文的一方胜出，另一方被取消；主模型先出正文时对冲的定时器也随之取消
+            return Flux.firstWithValue(holdUntilContent(primary.stream(prompt)), holdUntilContent(hedged));
+        });
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        deposit();
+        Mono<ChatResponse> primaryCall = Mono.fromCallable(() -> primary.call(prompt))
+                .subscribeOn(Schedulers.boundedElastic())
+                .cache();
+        Mono<ChatResponse> hedgedCall = Mono.delay(hedgeDelay)
+                .filter(tick -> tryAcquire())
+                .flatMap(tick -> Mono.fromCallable(() -> secondary.call(secondaryPrompt(prompt)))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .filter(HedgingChatModel::hasContent)
+                .doOnNext(response -> secondaryWins.incrementAndGet());
+        // 两边都没有正文（或都失败）时，以主模型自己的结果为准
+        return Mono.firstWithValue(primaryCall.filter(HedgingChatModel::hasContent), hedgedCall)
+                .onErrorResume(NoSuchElementException.class, e -> primaryCall)
+                .block();
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return primary.getDefaultOptions();
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public long getHedges()
+    {
+        return hedges.get();
+    }
+
+    public long getSecondaryWins()
+    {
+        return secondaryWins.get();
+    }
+
+    private void deposit()
+    {
+        requests.incrementAndGet();
+        credit.updateAndGet(current -> Math.min(maxCredit, current + creditPerRequest));
+    }
+
+    private boolean tryAcquire()
+    {
+        long current;
+        do {
+            current = credit.get();
+            if (current < UNIT)
+            {
+                log.debug("对冲预算不足，本次不发起对冲");
+                return false;
+            }
+        } while (!credit.compareAndSet(current, current - UNIT));
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 备用请求：复制原请求的 options，模型名换成备用模型的默认模型
+     */
+    private Prompt secondaryPrompt(Prompt prompt)
+    {
+        ChatOptions options = prompt.getOptions();
+        if (options == null)
+        {
+            return new Prompt(prompt.getInstructions());
+        }
+        ChatOptions copy = options.copy();
+        String secondaryModel = secondary.getDefaultOptions() == null ? null : secondary.getDefaultOptions().getModel();
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(copy);
+        if (secondaryModel != null && wrapper.isWritableProperty("model"))
+        {
+            wrapper.setPropertyValue("model", secondaryModel);
+        }
+        return new Prompt(prompt.getInstructions(), copy);
+    }
+
+    /**
+     * 第一个有内容的块出现前先暂存前面的块，出现后连同暂存的一起下发；
+     * 整个流都没有内容时在结束时下发暂存的块，保证结果不丢
+     */
+    private static Flux<ChatResponse> holdUntilContent(Flux<ChatResponse> source)
+    {
+        return Flux.defer(() -> {
+            List<ChatResponse> held = new ArrayList<>();
+            AtomicBoolean released = new AtomicBoolean();
+            return source
+                    .concatMapIterable(response -> {
+                        if (released.get())
+                        {
+                            return List.of(response);
+                        }
+                        held.add(response);
+                        if (!hasContent(response))
+                        {
+                            return List.<ChatResponse>of();
+                        }
+                        released.set(true);
+                        List<ChatResponse> batch = List.copyOf(held);
+                        held.clear();
+                        return batch;
+                    })
+                    .concatWith(Flux.defer(() -> released.get() ? Flux.empty() : Flux.fromIterable(held)));
+        });
+    }
+
+    private static boolean hasContent(ChatResponse response)
+    {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null)
+        {
+            return false;
+        }
+        AssistantMessage output = response.getResult().getOutput();
+        return StringUtils.hasLength(output.getText()) || output.hasToolCalls();
+    }
+}
@@ -0,0 +1,214 @@
+package com.redmoon2333.model;
+
+import com.redmoon2333.prompt.PromptCacheUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 给 ChatModel 的每次调用记录 Micrometer 指标，由 ChatModelMetricsConfig 自动包装所有 ChatModel Bean
+ * <p>
+ * 流式调用：
+ * <ul>
+ *     <li>chat.stream.ttft：订阅到第一个有内容的响应块（首 token 延迟）</li>
+ *     <li>chat.stream.inter.token：相邻两个响应块的间隔</li>
+ *     <li>chat.stream.duration：整条流耗时，按 outcome（complete/error/cancel）区分</li>
+ *     <li>chat.stream.tokens.per.second：首 token 之后的生成速度，优先用 usage 里的输出 token 数，没有则按响应块数</li>
+ *     <li>chat.stream.requests：按 outcome 计数，cancel/总数 即取消率</li>
+ * </ul>
+ * 同步调用记录 chat.call.duration。两种调用都按 usage 记录 chat.prompt.cache.tokens（命中/未命中上下文缓存的 prompt token 数）。
+ * 标签：bean（Bean 名）、model（实际模型名）、endpoint（Controller 的 URL 模板）。
+ */
+public class MeteredChatModel implements ChatModel
+{
+    private static final String UNKNOWN = "none";
+
+    private final ChatModel delegate;
+    private final String beanName;
+    private final MeterRegistry registry;
+
+    public MeteredChatModel(ChatModel delegate, String beanName, MeterRegistry registry)
+    {
+        this.delegate = delegate;
+        this.beanName = beanName;
+        this.registry = registry;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt)
+    {
+        Tags tags = tags(prompt, currentEndpoint());
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            ChatResponse response = delegate.call(prompt);
+            outcome = "complete";
+            if (response.getMetadata() != null)
+            {
+                PromptCacheUsage.record(registry, tags, response.getMetadata().getUsage());
+            }
+            return response;
+        } finally {
+            Timer.builder("chat.call.duration")
+                    .tags(tags).tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt)
+    {
+        // Controller 线程上先取一次；ChatClient 在订阅时才调用到这里，届时再取
+        String endpoint = currentEndpoint();
+        return Flux.defer(() -> {
+            StreamObservation observation = new StreamObservation(tags(prompt,
+                    UNKNOWN.equals(endpoint) ? currentEndpoint() : endpoint));
+            return delegate.stream(prompt)
+                    .doOnNext(observation::onResponse)
+                    .doFinally(observation::finish);
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions()
+    {
+        return delegate.getDefaultOptions();
+    }
+
+    private Tags tags(Prompt prompt, String endpoint)
+    {
+        String model = null;
+        if (prompt.getOptions() != null)
+        {
+            model = prompt.getOptions().getModel();
+        }
+        if (model == null && delegate.getDefaultOptions() != null)
+        {
+            model = delegate.getDefaultOptions().getModel();
+        }
+        return Tags.of("bean", beanName, "model", model == null ? UNKNOWN : model, "endpoint", endpoint);
+    }
+
+    private static String currentEndpoint()
+    {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null)
+        {
+            return UNKNOWN;
+        }
+        Object pattern = attributes.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return pattern == null ? UNKNOWN : pattern.toString();
+    }
+
+    /**
+     * 单条流的计时状态，Timer 在创建时解析一次，逐 token 记录时不再查表
+     */
+    private class StreamObservation
+    {
+        private final Tags tags;
+        private final Timer ttft;
+        private final Timer interToken;
+        private final long startNanos = System.nanoTime();
+        private long firstTokenNanos;
+        private long lastTokenNanos;
+        private long chunks;
+        private long completionTokens;
+        private Usage usage;
+
+        private StreamObservation(Tags tags)
+        {
+            this.tags = tags;
+            this.ttft = Timer.builder("chat.stream.ttft")
+                    .description("time to first token")
+                    .tags(tags)
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(registry);
+            this.interToken = Timer.builder("chat.stream.inter.token")
+                    .description("gap between consecutive stream chunks")
+                    .tags(tags)
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(registry);
+        }
+
+        private void onResponse(ChatResponse response)
+        {
+            Usage usage = response.getMetadata() == null ? null : response.getMetadata().getUsage();
+            if (usage != null && usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0)
+            {
+                completionTokens = usage.getCompletionTokens();
+            }
+            if (usage != null && usage.getPromptTokens() != null && usage.getPromptTokens() > 0)
+            {
+                this.usage = usage;
+            }
+            if (response.getResult() == null || response.getResult().getOutput().getText() == null
+                    || response.getResult().getOutput().getText().isEmpty())
+            {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (chunks == 0)
+            {
+                firstTokenNanos = now;
+                ttft.record(now - startNanos, TimeUnit.NANOSECONDS);
+            }
+            else
+            {
+                interToken.record(now - lastTokenNanos, TimeUnit.NANOSECONDS);
+            }
+            lastTokenNanos = now;
+            chunks++;
+        }
+
+        private void finish(SignalType signal)
+        {
+            String outcome = switch (signal) {
+                case ON_COMPLETE -> "complete";
+                case ON_ERROR -> "error";
+                default -> "cancel";
+            };
+            Timer.builder("chat.stream.duration")
+                    .tags(tags).tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.9, 0.99)
+                    .register(registry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            Counter.builder("chat.stream.requests")
+                    .tags(tags).tag("outcome", outcome)
+                    .register(registry)
+                    .increment();
+
+            if (signal == SignalType.ON_COMPLETE)
+            {
+                PromptCacheUsage.record(registry, tags, usage);
+            }
+
+            long tokens = completionTokens > 0 ? completionTokens : chunks;
+            long generationNanos = lastTokenNanos - firstTokenNanos;
+            if (signal == SignalType.ON_COMPLETE && tokens > 1 && generationNanos > 0)
+            {
+                DistributionSummary.builder("chat.stream.tokens.per.second")
+                        .tags(tags)
+                        .publishPercentiles(0.1, 0.5, 0.9)
+                        .register(registry)
+                        .record(tokens * 1_000_000_000.0 / generationNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.converter.OutputConverterCache;
+import com.redmoon2333.extract.BulkStudentExtractor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class BulkExtractionConfig
+{
+    // 每块输入行的估算 token 上限，以及每条记录的估算输出 token
+    @Value("${extraction.bulk.input-token-budget:3000}")
+    private int inputTokenBudget;
+    @Value("${extraction.bulk.output-tokens-per-row:60}")
+    private int outputTokensPerRow;
+    // 每块输出上限，qwen-plus 单次最多输出 8192 tokens
+    @Value("${extraction.bulk.max-output-tokens:6000}")
+    private int maxOutputTokens;
+    @Value("${extraction.bulk.max-rows-per-chunk:50}")
+    private int maxRowsPerChunk;
+    // 同时进行的分块请求数
+    @Value("${extraction.bulk.concurrency:4}")
+    private int concurrency;
+    // 返回无法解析时分块对半拆分重试的层数
+    @Value("${extraction.bulk.max-splits:2}")
+    private int maxSplits;
+
+    @Bean
+    public BulkStudentExtractor bulkStudentExtractor(@Qualifier("qwenChatClient") ChatClient qwenChatClient,
+                                                     OutputConverterCache outputConverterCache)
+    {
+        return new BulkStudentExtractor(qwenChatClient, outputConverterCache, inputTokenBudget, outputTokensPerRow,
+                maxOutputTokens, maxRowsPerChunk, concurrency, maxSplits);
+    }
+}
@@ -23,12 +23,10 @@ public class SaaLLMConfig
     private final String QWEN_MODEL = "qwen-plus";
 
     @Bean(name = "deepseek")
-    public ChatModel deepSeek()
+    public ChatModel deepSeek(DashScopeApi dashScopeApi)
     {
         return DashScopeChatModel.builder()
-                        .dashScopeApi(DashScopeApi.builder()
-                                    .apiKey(System.getenv("aliQwen_api"))
-                                .build())
+                .dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder().withModel(DEEPSEEK_MODEL).build()
                 )
@@ -36,11 +34,9 @@ public class SaaLLMConfig
     }
 
     @Bean(name = "qwen")
-    public ChatModel qwen()
+    public ChatModel qwen(DashScopeApi dashScopeApi)
     {
-        return DashScopeChatModel.builder().dashScopeApi(DashScopeApi.builder()
-                        .apiKey(System.getenv("aliQwen_api"))
-                        .build())
+        return DashScopeChatModel.builder().dashScopeApi(dashScopeApi)
                 .defaultOptions(
                         DashScopeChatOptions.builder()
                                 .withModel(QWEN_MODEL)
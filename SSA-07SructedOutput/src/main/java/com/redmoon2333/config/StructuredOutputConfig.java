@@ -0,0 +1,18 @@
+package com.redmoon2333.config;
+
+import com.redmoon2333.converter.OutputConverterCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StructuredOutputConfig
+{
+    /**
+     * 结构化输出共用的 converter 缓存，entity() 调用传入缓存的 converter，不再按 Class 每次新建
+     */
+    @Bean
+    public OutputConverterCache outputConverterCache()
+    {
+        return new OutputConverterCache();
+    }
+}
@@ -1,19 +1,46 @@
 package com.redmoon2333.controller;
 
+import com.redmoon2333.converter.OutputConverterCache;
+import com.redmoon2333.extract.BulkStudentExtractor;
+import com.redmoon2333.extract.ExtractionResult;
 import com.redmoon2333.records.StudentRecord;
+import com.redmoon2333.stream.JsonStreamDecoder;
+import com.redmoon2333.stream.StructuredChunk;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @RestController
 public class StructuredOutputController
 {
     @Resource(name = "qwenChatClient")
     private ChatClient qwenChatClient;
+    @Resource
+    private BulkStudentExtractor bulkStudentExtractor;
+    // 按类型缓存的 BeanOutputConverter，避免每次调用重新生成 JSON Schema
+    @Resource
+    private OutputConverterCache outputConverterCache;
+    // 单次批量请求的行数上限，整批在请求线程上等待完成，不设上限会长时间占住线程
+    @Value("${extraction.bulk.max-rows:2000}")
+    private int bulkMaxRows;
 
     @GetMapping("/structuredoutput/chat")
     public StudentRecord chat(@RequestParam(name = "sname") String sname,
@@ -28,7 +55,7 @@ public class StructuredOutputController
                         .param("sname",sname)
                         .param("email",email);
             }
-        }).call().entity(StudentRecord.class);
+        }).call().entity(outputConverterCache.get(StudentRecord.class));
     }
 
     @GetMapping("/structuredoutput/chat2")
@@ -44,6 +71,88 @@ public class StructuredOutputController
                 .param("sname",sname)
                 .param("email",email))
                 .call()
-                .entity(StudentRecord.class);
+                .entity(outputConverterCache.get(StudentRecord.class));
+    }
+
+    /**
+     * 流式结构化输出：每个字段生成完就推送一次部分填充的 StudentRecord，最后一条 complete=true
+     */
+    @GetMapping(value = "/structuredoutput/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredChunk<StudentRecord>> stream(@RequestParam(name = "sname") String sname,
+                                                       @RequestParam(name = "email") String email)
+    {
+        BeanOutputConverter<StudentRecord> converter = outputConverterCache.get(StudentRecord.class);
+
+        Flux<String> tokens = qwenChatClient.prompt()
+                .user(promptUserSpec -> promptUserSpec.text("学号1003，我叫{sname},大学专业人工智能,邮箱{email}\n{format}")
+                        .param("sname", sname)
+                        .param("email", email)
+                        .param("format", converter.getFormat()))
+                .stream()
+                .content();
+
+        return decode(tokens, () -> JsonStreamDecoder.forObject(StudentRecord.class));
+    }
+
+    /**
+     * 流式结构化输出（列表）：每生成完一条学生记录就推送一条
+     */
+    @GetMapping(value = "/structuredoutput/stream/list", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<StructuredChunk<StudentRecord>> streamList(@RequestParam(name = "major") String major,
+                                                           @RequestParam(name = "count", defaultValue = "5") int count)
+    {
+        BeanOutputConverter<List<StudentRecord>> converter =
+                outputConverterCache.get(new ParameterizedTypeReference<List<StudentRecord>>() {});
+
+        Flux<String> tokens = qwenChatClient.prompt()
+                .user(promptUserSpec -> promptUserSpec.text("虚构{count}个{major}专业的学生，学号从2001开始\n{format}")
+                        .param("count", count)
+                        .param("major", major)
+                        .param("format", converter.getFormat()))
+                .stream()
+                .content();
+
+        return decode(tokens, () -> JsonStreamDecoder.forArray(StudentRecord.class));
+    }
+
+    /**
+     * 批量抽取：请求体为 JSON 字符串数组，每个元素描述一名学生，结果按输入顺序返回并带输入下标；
+     * 超过 extraction.bulk.max-rows 行返回 413
+     */
+    @PostMapping("/structuredoutput/bulk")
+    public List<ExtractionResult> bulk(@RequestBody List<String> rows)
+    {
+        if (rows.size() > bulkMaxRows)
+        {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "单次最多 " + bulkMaxRows + " 行，本次 " + rows.size() + " 行，请分批提交");
+        }
+        return bulkStudentExtractor.extract(rows).collectList().block();
+    }
+
+    /**
+     * 批量抽取：上传花名册文本文件，每行一名学生，空行忽略
+     */
+    @PostMapping("/structuredoutput/bulk/file")
+    public List<ExtractionResult> bulkFile(@RequestParam(name = "file") MultipartFile file) throws IOException
+    {
+        List<String> rows = new String(file.getBytes(), StandardCharsets.UTF_8).lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .toList();
+        return bulk(rows);
+    }
+
+    /**
+     * 每次订阅新建一个解析器，文本块到达即解析，流结束时校验 JSON 已闭合
+     */
+    private static <T> Flux<StructuredChunk<T>> decode(Flux<String> tokens,
+                                                       Supplier<JsonStreamDecoder<T>> decoderFactory)
+    {
+        return Flux.defer(() -> {
+            JsonStreamDecoder<T> decoder = decoderFactory.get();
+            return tokens.concatMapIterable(decoder::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish())));
+        });
     }
 }
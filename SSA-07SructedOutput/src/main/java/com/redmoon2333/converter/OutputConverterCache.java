@@ -0,0 +1,38 @@
+package com.redmoon2333.converter;
+
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.core.ParameterizedTypeReference;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按目标类型缓存 BeanOutputConverter
+ * <p>
+ * 每次 new BeanOutputConverter 都会反射生成 JSON Schema 并拼出格式说明字符串，而结果只取决于目标类型。
+ * 这里每个类型只构造一次；converter 构造后只读，convert 无状态，可在请求间共享。
+ * 泛型类型（List&lt;StudentRecord&gt; 等）以 ParameterizedTypeReference.getType() 为 key，同一泛型不同写法的实例也会命中同一条。
+ */
+public class OutputConverterCache
+{
+    private final Map<Type, BeanOutputConverter<?>> converters = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> BeanOutputConverter<T> get(Class<T> type)
+    {
+        return (BeanOutputConverter<T>) converters.computeIfAbsent(type, key -> new BeanOutputConverter<>(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> BeanOutputConverter<T> get(ParameterizedTypeReference<T> typeReference)
+    {
+        return (BeanOutputConverter<T>) converters.computeIfAbsent(typeReference.getType(),
+                key -> new BeanOutputConverter<>(typeReference));
+    }
+
+    public int size()
+    {
+        return converters.size();
+    }
+}
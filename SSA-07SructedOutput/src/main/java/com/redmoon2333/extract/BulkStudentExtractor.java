@@ -0,0 +1,202 @@
+package com.redmoon2333.extract;
+
+import com.redmoon2333.converter.OutputConverterCache;
+import com.redmoon2333.records.IndexedStudentRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.core.ParameterizedTypeReference;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量抽取学生信息：一次请求塞入多行输入，要求模型返回 List&lt;IndexedStudentRecord&gt;
+ * <ul>
+ *     <li>分块：按估算的输入 token 和输出 token 两个预算装箱，同时限制每块行数</li>
+ *     <li>并发：分块用 flatMapSequential 以 concurrency 为上限并行调用，结果仍按输入顺序输出</li>
+ *     <li>对回：输入行带全局编号 [index]，模型按 index 返回，不依赖返回顺序；漏掉的行、分块失败的行带 error 返回</li>
+ *     <li>解析失败：返回的 JSON 无法解析（多为输出被截断或格式错乱）时把分块一分为二分别重试，最多拆 maxSplits 层，
+ *         一行坏数据只影响它所在的最小分块</li>
+ * </ul>
+ * N 行输入的调用次数从 N 次降到约 N / 每块行数 次。
+ */
+@Slf4j
+public class BulkStudentExtractor
+{
+    private static final String SYSTEM = "你是信息抽取助手。用户每行输入以 [编号] 开头，描述一名学生。"
+            + "为每一行抽取学号、姓名、专业、邮箱，index 填该行的编号；缺失的字段填 null，不要编造，不要合并或跳过任何一行。";
+
+    private final ChatClient chatClient;
+    private final BeanOutputConverter<List<IndexedStudentRecord>> converter;
+    private final int inputTokenBudget;
+    private final int outputTokensPerRow;
+    private final int maxOutputTokens;
+    private final int maxRowsPerChunk;
+    private final int concurrency;
+    private final int maxSplits;
+
+    /**
+     * @param inputTokenBudget   每块输入行的估算 token 上限（不含系统提示词和格式说明）
+     * @param outputTokensPerRow 每条记录的估算输出 token 数
+     * @param maxOutputTokens    每块的输出 token 上限，同时作为请求的 maxTokens
+     * @param maxRowsPerChunk    每块最多行数，行数过多时模型漏行的概率上升
+     * @param concurrency        同时进行的分块请求数
+     * @param maxSplits          解析失败时分块对半拆分重试的最大层数，0 表示不重试
+     */
+    public BulkStudentExtractor(ChatClient chatClient, OutputConverterCache converterCache, int inputTokenBudget,
+                                int outputTokensPerRow, int maxOutputTokens, int maxRowsPerChunk, int concurrency,
+                                int maxSplits)
+    {
+        this.chatClient = chatClient;
+        this.converter = converterCache.get(new ParameterizedTypeReference<List<IndexedStudentRecord>>() {});
+        this.inputTokenBudget = inputTokenBudget;
+        this.outputTokensPerRow = outputTokensPerRow;
+        this.maxOutputTokens = maxOutputTokens;
+        this.maxRowsPerChunk = maxRowsPerChunk;
+        this.concurrency = concurrency;
+        this.maxSplits = maxSplits;
+    }
+
+    public Flux<ExtractionResult> extract(List<String> rows)
+    {
+        List<List<Integer>> chunks = chunk(rows);
+        log.info("批量抽取 {} 行，分为 {} 块，并发 {}", rows.size(), chunks.size(), concurrency);
+        return Flux.fromIterable(chunks)
+                .flatMapSequential(chunk -> Mono.fromCallable(() -> extractChunk(rows, chunk, maxSplits))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(error -> {
+                            log.warn("分块 [{}..{}] 抽取失败: {}", chunk.get(0), chunk.get(chunk.size() - 1), error.toString());
+                            return Mono.just(failed(rows, chunk, "分块调用失败: " + error.getMessage()));
+                        }), concurrency)
+                .concatMapIterable(results -> results);
+    }
+
+    /**
+     * 按输入/输出两个预算贪心装箱，返回每块包含的行号
+     */
+    List<List<Integer>> chunk(List<String> rows)
+    {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        int inputTokens = 0;
+        for (int i = 0; i < rows.size(); i++)
+        {
+            int tokens = estimateTokens(rows.get(i)) + 4;
+            boolean full = current.size() >= maxRowsPerChunk
+                    || inputTokens + tokens > inputTokenBudget
+                    || (current.size() + 1) * outputTokensPerRow > maxOutputTokens;
+            if (full && !current.isEmpty())
+            {
+                chunks.add(current);
+                current = new ArrayList<>();
+                inputTokens = 0;
+            }
+            current.add(i);
+            inputTokens += tokens;
+        }
+        if (!current.isEmpty())
+        {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * 调用模型并解析一个分块；解析失败且还能拆分时对半拆开依次重试，调用本身失败（限流、网络等）直接抛出
+     */
+    private List<ExtractionResult> extractChunk(List<String> rows, List<Integer> chunk, int splitsLeft)
+    {
+        StringBuilder lines = new StringBuilder();
+        for (int index : chunk)
+        {
+            lines.append('[').append(index).append("] ").append(rows.get(index).replace('\n', ' ')).append('\n');
+        }
+
+        String text = chatClient.prompt()
+                .system(SYSTEM)
+                .user(promptUserSpec -> promptUserSpec.text("{rows}\n{format}")
+                        .param("rows", lines.toString())
+                        .param("format", converter.getFormat()))
+                .options(ChatOptions.builder()
+                        .temperature(0.0)
+                        .maxTokens(Math.min(maxOutputTokens, chunk.size() * outputTokensPerRow * 2))
+                        .build())
+                .call()
+                .content();
+
+        List<IndexedStudentRecord> records;
+        try {
+            records = converter.convert(text);
+        } catch (RuntimeException e) {
+            if (splitsLeft <= 0 || chunk.size() < 2)
+            {
+                log.warn("分块 [{}..{}] 解析失败: {}", chunk.get(0), chunk.get(chunk.size() - 1), e.toString());
+                return failed(rows, chunk, "模型返回无法解析: " + e.getMessage());
+            }
+            int half = chunk.size() / 2;
+            log.info("分块 [{}..{}] 解析失败，拆成 {} + {} 行重试", chunk.get(0), chunk.get(chunk.size() - 1),
+                    half, chunk.size() - half);
+            List<ExtractionResult> results = new ArrayList<>(extractChunk(rows, chunk.subList(0, half), splitsLeft - 1));
+            results.addAll(extractChunk(rows, chunk.subList(half, chunk.size()), splitsLeft - 1));
+            return results;
+        }
+
+        Map<Integer, IndexedStudentRecord> byIndex = new HashMap<>();
+        if (records != null)
+        {
+            for (IndexedStudentRecord record : records)
+            {
+                byIndex.putIfAbsent(record.index(), record);
+            }
+        }
+        List<ExtractionResult> results = new ArrayList<>(chunk.size());
+        for (int index : chunk)
+        {
+            IndexedStudentRecord record = byIndex.get(index);
+            results.add(record == null
+                    ? new ExtractionResult(index, rows.get(index), null, "模型未返回该行")
+                    : new ExtractionResult(index, rows.get(index), record.toStudentRecord(), null));
+        }
+        return results;
+    }
+
+    private static List<ExtractionResult> failed(List<String> rows, List<Integer> chunk, String error)
+    {
+        List<ExtractionResult> results = new ArrayList<>(chunk.size());
+        for (int index : chunk)
+        {
+            results.add(new ExtractionResult(index, rows.get(index), null, error));
+        }
+        return results;
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符按 1 个 token，其余按 4 个字符 1 个 token
+     */
+    private static int estimateTokens(String text)
+    {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); )
+        {
+            int codePoint = text.codePointAt(i);
+            if (Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN)
+            {
+                cjk++;
+            }
+            else
+            {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjk + (other + 3) / 4;
+    }
+}
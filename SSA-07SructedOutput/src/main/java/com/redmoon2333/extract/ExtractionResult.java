@@ -0,0 +1,10 @@
+package com.redmoon2333.extract;
+
+import com.redmoon2333.records.StudentRecord;
+
+/**
+ * 单行输入的抽取结果，record 为空时 error 说明原因（模型漏掉该行或所在分块调用失败）
+ */
+public record ExtractionResult(int index, String input, StudentRecord record, String error)
+{
+}
@@ -0,0 +1,13 @@
+package com.redmoon2333.records;
+
+/**
+ * 批量抽取时模型返回的记录，index 对应输入行的编号，用于把结果对回原始输入
+ */
+public record IndexedStudentRecord
+        (int index, String id, String sname, String major, String email)
+{
+    public StudentRecord toStudentRecord()
+    {
+        return new StudentRecord(id, sname, major, email);
+    }
+}
@@ -0,0 +1,245 @@
+package com.redmoon2333.stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ContainerNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 增量解析模型输出的 JSON 文本流
+ * <p>
+ * 基于 Jackson 的非阻塞解析器，每收到一段文本就喂进去，解析到哪里算哪里，不等整段 JSON 生成完：
+ * <ul>
+ *     <li>对象模式：根对象的每个字段闭合时推送一次部分填充的对象，根对象闭合时推送完整对象</li>
+ *     <li>列表模式：根数组的每个元素闭合时推送该元素</li>
+ * </ul>
+ * 根 JSON 之前的内容（```json 代码块标记、说明文字）会被跳过，根 JSON 闭合之后的内容忽略。
+ * 一个实例只对应一次生成，非线程安全，按顺序调用 feed/finish。
+ */
+public class JsonStreamDecoder<T>
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Class<T> type;
+    private final boolean arrayRoot;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final JsonNodeFactory nodes = MAPPER.getNodeFactory();
+    private final Deque<ContainerNode<?>> stack = new ArrayDeque<>();
+    private final List<String> closedFields = new ArrayList<>();
+
+    private ContainerNode<?> root;
+    private String fieldName;
+    private String rootField;
+    private boolean started;
+    private boolean finished;
+    private int index;
+
+    private JsonStreamDecoder(Class<T> type, boolean arrayRoot)
+    {
+        this.type = type;
+        this.arrayRoot = arrayRoot;
+        try {
+            this.parser = MAPPER.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * 输出是单个 JSON 对象
+     */
+    public static <T> JsonStreamDecoder<T> forObject(Class<T> type)
+    {
+        return new JsonStreamDecoder<>(type, false);
+    }
+
+    /**
+     * 输出是 JSON 数组，逐个推送元素
+     */
+    public static <T> JsonStreamDecoder<T> forArray(Class<T> elementType)
+    {
+        return new JsonStreamDecoder<>(elementType, true);
+    }
+
+    public List<StructuredChunk<T>> feed(String text)
+    {
+        if (finished || text == null || text.isEmpty())
+        {
+            return List.of();
+        }
+        if (!started)
+        {
+            int start = firstRootChar(text);
+            if (start < 0)
+            {
+                return List.of();
+            }
+            started = true;
+            text = text.substring(start);
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            return drain();
+        } catch (IOException e) {
+            throw new IllegalStateException("模型输出的 JSON 无法解析", e);
+        }
+    }
+
+    /**
+     * 文本流结束时调用，根 JSON 没有闭合说明输出被截断
+     */
+    public List<StructuredChunk<T>> finish()
+    {
+        if (finished)
+        {
+            return List.of();
+        }
+        try {
+            feeder.endOfInput();
+            List<StructuredChunk<T>> chunks = drain();
+            if (!finished)
+            {
+                throw new IllegalStateException("模型输出的 JSON 不完整");
+            }
+            return chunks;
+        } catch (IOException e) {
+            throw new IllegalStateException("模型输出的 JSON 无法解析", e);
+        }
+    }
+
+    private List<StructuredChunk<T>> drain() throws IOException
+    {
+        List<StructuredChunk<T>> chunks = new ArrayList<>();
+        JsonToken token;
+        while (!finished && (token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null)
+        {
+            switch (token)
+            {
+                case FIELD_NAME -> fieldName = parser.currentName();
+                case START_OBJECT -> open(nodes.objectNode());
+                case START_ARRAY -> open(nodes.arrayNode());
+                case END_OBJECT, END_ARRAY -> close(chunks);
+                default -> {
+                    attach(scalar(token));
+                    if (stack.size() == 1)
+                    {
+                        rootField = fieldName;
+                        chunks.add(childClosed(stack.peek() instanceof ArrayNode array ? array.get(array.size() - 1) : null));
+                    }
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private void open(ContainerNode<?> node)
+    {
+        if (stack.isEmpty())
+        {
+            if (arrayRoot != node.isArray())
+            {
+                throw new IllegalStateException("模型输出的 JSON 根类型不符，期望 " + (arrayRoot ? "数组" : "对象"));
+            }
+            root = node;
+        }
+        else
+        {
+            if (stack.size() == 1)
+            {
+                rootField = fieldName;
+            }
+            attach(node);
+        }
+        stack.push(node);
+    }
+
+    private void close(List<StructuredChunk<T>> chunks)
+    {
+        ContainerNode<?> node = stack.pop();
+        if (stack.isEmpty())
+        {
+            finished = true;
+            if (!arrayRoot)
+            {
+                chunks.add(new StructuredChunk<>(convert(root), 0, true, List.copyOf(closedFields)));
+            }
+        }
+        else if (stack.size() == 1)
+        {
+            chunks.add(childClosed(node));
+        }
+    }
+
+    /**
+     * 根容器的一个直接子节点闭合：对象模式是一个字段，列表模式是一个元素
+     */
+    private StructuredChunk<T> childClosed(JsonNode child)
+    {
+        if (arrayRoot)
+        {
+            return new StructuredChunk<>(convert(child), index++, true, List.of());
+        }
+        closedFields.add(rootField);
+        return new StructuredChunk<>(convert(root), 0, false, List.copyOf(closedFields));
+    }
+
+    private void attach(JsonNode node)
+    {
+        ContainerNode<?> parent = stack.peek();
+        if (parent instanceof ObjectNode object)
+        {
+            object.set(fieldName, node);
+        }
+        else if (parent instanceof ArrayNode array)
+        {
+            array.add(node);
+        }
+    }
+
+    private JsonNode scalar(JsonToken token) throws IOException
+    {
+        return switch (token) {
+            case VALUE_STRING -> nodes.textNode(parser.getText());
+            case VALUE_NUMBER_INT -> parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                    ? nodes.numberNode(parser.getBigIntegerValue())
+                    : nodes.numberNode(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT -> nodes.numberNode(parser.getDecimalValue());
+            case VALUE_TRUE -> nodes.booleanNode(true);
+            case VALUE_FALSE -> nodes.booleanNode(false);
+            case VALUE_NULL -> nodes.nullNode();
+            default -> throw new IllegalStateException("不支持的 JSON token: " + token);
+        };
+    }
+
+    private T convert(JsonNode node)
+    {
+        try {
+            return MAPPER.treeToValue(node, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("JSON 无法转换为 " + type.getSimpleName() + ": " + node, e);
+        }
+    }
+
+    private int firstRootChar(String text)
+    {
+        return text.indexOf(arrayRoot ? '[' : '{');
+    }
+}
@@ -0,0 +1,15 @@
+package com.redmoon2333.stream;
+
+import java.util.List;
+
+/**
+ * 流式结构化输出的一次推送
+ *
+ * @param value    当前已解析出的对象；单个对象时是部分填充的对象，列表时是刚闭合的那个元素
+ * @param index    列表元素下标，单个对象恒为 0
+ * @param complete 对象（或列表元素）已完整闭合
+ * @param fields   单个对象已闭合的字段名，按出现顺序；列表元素为空
+ */
+public record StructuredChunk<T>(T value, int index, boolean complete, List<String> fields)
+{
+}
@@ -0,0 +1,89 @@
+package com.redmoon2333.converter;
+
+import com.redmoon2333.records.Book;
+import com.redmoon2333.records.StudentRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.converter.BeanOutputConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次请求 new BeanOutputConverter 与 OutputConverterCache 查找的对比
+ * <p>
+ * 每次调用都模拟一次完整请求：取格式说明拼进提示词，再把模型返回的 JSON 转成对象。
+ * 运行：在 IDE 中执行 main，或 mvn test-compile 后以 test classpath 启动 org.openjdk.jmh.Main（加 -prof gc）。
+ * main 默认挂 GC profiler，除耗时外看 gc.alloc.rate.norm（每次调用分配的字节数），缓存省下的主要是分配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputConverterCacheBenchmark
+{
+    @Param({"StudentRecord", "Book"})
+    private String target;
+
+    private Class<?> type;
+    private String json;
+    private OutputConverterCache cache;
+
+    @Setup
+    public void setUp()
+    {
+        if ("StudentRecord".equals(target))
+        {
+            type = StudentRecord.class;
+            json = "{\"id\":\"2024001\",\"sname\":\"张三\",\"major\":\"计算机科学与技术\",\"email\":\"zhangsan@example.com\"}";
+        }
+        else
+        {
+            type = Book.class;
+            json = "{\"id\":1,\"bookName\":\"深入理解Java虚拟机\"}";
+        }
+        cache = new OutputConverterCache();
+        cache.get(type);
+    }
+
+    @Benchmark
+    public void perRequest(Blackhole blackhole)
+    {
+        request(new BeanOutputConverter<>(type), blackhole);
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole)
+    {
+        request(cache.get(type), blackhole);
+    }
+
+    private void request(BeanOutputConverter<?> converter, Blackhole blackhole)
+    {
+        blackhole.consume(converter.getFormat());
+        blackhole.consume(converter.convert(json));
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+                .include(OutputConverterCacheBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}